@@ -1,6 +1,7 @@
 package com.example.onestopshop;
 
 import android.app.DatePickerDialog;
+import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
@@ -10,7 +11,6 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 
-import android.text.TextUtils;
 import android.text.method.ScrollingMovementMethod;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -29,6 +29,7 @@ import com.squareup.picasso.Picasso;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Fragment to add an item to the inventory
@@ -178,25 +179,34 @@ public class AddItemFragment extends Fragment {
                 // If the item is valid, add it to the inventory
                 if (validItem) {
                     inventoryController = new InventoryController();
-
-                    inventoryController.addItem(new Item(itemName, description, purchaseDate, make,
-                            model, estimatedValue, comments, serialNumber, selectedTags), new InventoryController.ItemAddedCallback() {
-                        @Override
-                        public void onItemAdded(String addedItemId) {
-                            // Update the itemId variable
-                            itemId = addedItemId;
-                            //Upload photos to Firebase
-                            photosController = new PhotosController(itemId);
-                            //tagsController.uploadNewTagsToTagsField(selectedTags);
-                            String tag = "AddItemActivity";
-                            Log.d(tag, "" + localUris.size());
-                            Log.d(tag, "The itemId is: " + itemId);
-                            if(localUris.size() > 0) {
-                                photosController.uploadAllPhotos(localUris);
-                            }
-
+                    // The ID is allocated locally so that the photos can upload while the item is written.
+                    // It is kept for the form, so submitting it twice writes the same document.
+                    if (itemId == null) {
+                        itemId = inventoryController.newItemId();
+                    }
+                    CompletableFuture<String> itemWrite = inventoryController.addItem(itemId, new Item(itemName,
+                            description, purchaseDate, make, model, estimatedValue, comments, serialNumber, selectedTags));
+                    CompletableFuture<Void> photoUploads = CompletableFuture.completedFuture(null);
+                    String tag = "AddItemActivity";
+                    Log.d(tag, "" + localUris.size());
+                    Log.d(tag, "The itemId is: " + itemId);
+                    if (localUris.size() > 0) {
+                        //Upload photos to Firebase
+                        photosController = new PhotosController(itemId);
+                        photoUploads = photosController.uploadAllPhotos(new ArrayList<>(localUris));
+                    }
+                    final String addedItemId = itemId;
+                    // The screen is gone by the time the writes fail, so the toast uses the app context
+                    Context appContext = requireContext().getApplicationContext();
+                    // Creating the item takes as long as the slower of the two paths
+                    CompletableFuture.allOf(itemWrite, photoUploads).whenCompleteAsync((aVoid, e) -> {
+                        if (e != null) {
+                            Log.d(tag, "Failed to add item " + addedItemId, e);
+                            String message = itemWrite.isCompletedExceptionally()
+                                    ? "Could not save " + itemName : "Could not upload the photos of " + itemName;
+                            Toast.makeText(appContext, message, Toast.LENGTH_LONG).show();
                         }
-                    });
+                    }, AppExecutors.mainThread());
                     requireActivity().finish();
                 }
             }
@@ -205,11 +215,12 @@ public class AddItemFragment extends Fragment {
         addTagBtn.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                tagsController.fetchExistingTags(new TagsController.OnTagsFetchListener() {
+                tagsController.fetchTagUsage(new TagsController.OnTagUsageFetchListener() {
                     @Override
-                    public void onSuccess(List<String> existingTags) {
+                    public void onSuccess(List<TagUsage> existingTags) {
                         // send existing tags to dialog
                         TagDialog tagDialog = new TagDialog(requireContext(),selectedTags, existingTags, tagsChipGroup);
+                        tagDialog.setItemDetails(makeText.getText().toString(), modelText.getText().toString());
                         tagDialog.show();
                     }
 
@@ -259,37 +270,11 @@ public class AddItemFragment extends Fragment {
      * @return True if the item is valid, false otherwise.
      */
     public boolean validItem(Item item) {
-        boolean valid = true;
-        if(item.getItemName() == null || item.getItemName().isEmpty()) {
-            Toast.makeText(getContext(), "Invalid Product Name", Toast.LENGTH_SHORT).show();
-            valid = false;
-        }
-        else if(item.getDescription() == null || item.getDescription().isEmpty()) {
-            Toast.makeText(getContext(), "Invalid Description", Toast.LENGTH_SHORT).show();
-            valid = false;
+        String error = ItemValidator.validate(item);
+        if (error != null) {
+            Toast.makeText(getContext(), error, Toast.LENGTH_SHORT).show();
         }
-        else if(TextUtils.isEmpty(item.getPurchaseDate())){
-            Toast.makeText(getContext(), "Invalid Purchase Date", Toast.LENGTH_SHORT).show();
-            valid = false;
-        }
-        else if(item.getMake() == null || item.getMake().isEmpty()) {
-            Toast.makeText(getContext(), "Invalid Make", Toast.LENGTH_SHORT).show();
-            valid = false;
-        }
-        else if(item.getModel() == null || item.getModel().isEmpty()) {
-            Toast.makeText(getContext(), "Invalid Model", Toast.LENGTH_SHORT).show();
-            valid = false;
-        }
-        else if(item.getEstimatedValue() < 0) {
-            Toast.makeText(getContext(), "Value must be greater than 0", Toast.LENGTH_SHORT).show();
-            valid = false;
-        }
-        else if(selectedTags.size() == 0) {
-            Toast.makeText(getContext(), "Must have at least one tag", Toast.LENGTH_SHORT).show();
-            valid = false;
-        }
-
-        return valid;
+        return error == null;
     }
     /**
      * Launches the gallery fragment for adding images.
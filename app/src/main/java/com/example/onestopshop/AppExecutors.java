@@ -0,0 +1,53 @@
+package com.example.onestopshop;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shared executors for moving work off the main thread and posting results back to it.
+ */
+public final class AppExecutors {
+    // A single thread keeps snapshot processing in arrival order
+    private static final ExecutorService BACKGROUND = Executors.newSingleThreadExecutor();
+    // Blocking file and stream work, kept off the ordered background thread
+    private static final ExecutorService IO = Executors.newCachedThreadPool();
+    private static Executor mainThread;
+
+    private AppExecutors() {
+    }
+
+    /**
+     * Returns the executor used for parsing snapshots and preparing lists.
+     *
+     * @return The shared background executor.
+     */
+    public static Executor background() {
+        return BACKGROUND;
+    }
+
+    /**
+     * Returns the executor used for blocking work such as reading and writing files.
+     *
+     * @return The shared I/O executor.
+     */
+    public static Executor io() {
+        return IO;
+    }
+
+    /**
+     * Returns an executor that runs tasks on the main (UI) thread.
+     *
+     * @return The main thread executor.
+     */
+    public static synchronized Executor mainThread() {
+        if (mainThread == null) {
+            Handler handler = new Handler(Looper.getMainLooper());
+            mainThread = handler::post;
+        }
+        return mainThread;
+    }
+}
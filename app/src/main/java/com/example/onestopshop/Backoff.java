@@ -0,0 +1,56 @@
+package com.example.onestopshop;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with jitter. The delay before retry n is drawn uniformly from the
+ * upper half of min(max, initial * 2^n), so that clients that failed together do not
+ * retry together, while each still waits at least half the nominal delay.
+ */
+public class Backoff {
+    private final long initialMs;
+    private final long maxMs;
+    private final Random random;
+    private int attempt;
+
+    /**
+     * @param initialMs The nominal delay before the first retry.
+     * @param maxMs     The largest nominal delay.
+     */
+    public Backoff(long initialMs, long maxMs) {
+        this(initialMs, maxMs, new Random());
+    }
+
+    Backoff(long initialMs, long maxMs, Random random) {
+        this.initialMs = initialMs;
+        this.maxMs = maxMs;
+        this.random = random;
+    }
+
+    /**
+     * Returns the delay before the next retry and advances the attempt count.
+     *
+     * @return The delay in milliseconds.
+     */
+    public long nextDelayMs() {
+        // Cap the shift so the nominal delay cannot overflow
+        long nominal = Math.min(maxMs, initialMs << Math.min(attempt, 30));
+        attempt++;
+        long half = nominal / 2;
+        return half + (long) (random.nextDouble() * (nominal - half));
+    }
+
+    /**
+     * Returns the number of delays handed out since the last reset.
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    /**
+     * Starts again from the initial delay, after a success.
+     */
+    public void reset() {
+        attempt = 0;
+    }
+}
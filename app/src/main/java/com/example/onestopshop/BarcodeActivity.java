@@ -404,16 +404,21 @@ public class BarcodeActivity extends AppCompatActivity implements CameraXFragmen
                             barcodeData.put("make", make);
                             barcodeData.put("estimatedValue", estimatedValue);
 
-                            // Add the document to the "barcodes" collection
-                            barcodesRef// Use the barcode value as the document ID
-                                    .add(barcodeData)
-                                    .addOnSuccessListener(aVoid -> {
-                                        // Handle success
-                                        Toast.makeText(BarcodeActivity.this, "Barcode information uploaded successfully", Toast.LENGTH_SHORT).show();
-                                    })
-                                    .addOnFailureListener(e -> {
-                                        // Handle failure
-                                        Toast.makeText(BarcodeActivity.this, "Failed to upload barcode information", Toast.LENGTH_SHORT).show();
+                            // The document ID is derived from the barcode value, so a retried or
+                            // repeated upload overwrites the same document instead of adding another
+                            String barcodeId = IdempotencyKeys.fromValue("barcode", barcodeValue);
+                            WriteJournal.getInstance()
+                                    .enqueue(PendingMutation.set(barcodesRef.document(barcodeId).getPath(), barcodeData))
+                                    .whenComplete((aVoid, e) -> {
+                                        if (isDestroyed()) {
+                                            return;
+                                        }
+                                        if (e == null) {
+                                            Toast.makeText(BarcodeActivity.this, "Barcode information uploaded successfully", Toast.LENGTH_SHORT).show();
+                                        } else {
+                                            Log.d("BarcodeActivity", "Failed to upload barcode " + barcodeValue, e);
+                                            Toast.makeText(BarcodeActivity.this, "Failed to upload barcode information", Toast.LENGTH_SHORT).show();
+                                        }
                                     });
                         }
                     }else{
@@ -0,0 +1,223 @@
+package com.example.onestopshop;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+/**
+ * Writes large numbers of documents in chunked {@link WriteBatch} commits.
+ * Each chunk holds at most {@link #MAX_BATCH_SIZE} operations and commits atomically;
+ * chunks are committed one after another so that progress can be reported in order, and a
+ * chunk that fails does not stop the chunks after it.
+ * Commits go through the {@link WriteScheduler} at a cost of one per operation.
+ */
+public class BatchWriter {
+    /**
+     * The largest number of operations Firestore accepts in one batch.
+     */
+    public static final int MAX_BATCH_SIZE = 500;
+
+    private final FirebaseFirestore db;
+    private final int batchSize;
+    private final String collection;
+
+    /**
+     * Creates a writer for item documents.
+     */
+    public BatchWriter() {
+        this(FirebaseFirestore.getInstance(), MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param db        The database to write to.
+     * @param batchSize The number of operations per commit, at most {@link #MAX_BATCH_SIZE}.
+     */
+    public BatchWriter(FirebaseFirestore db, int batchSize) {
+        this(db, batchSize, WriteScheduler.ITEMS);
+    }
+
+    /**
+     * @param db         The database to write to.
+     * @param batchSize  The number of operations per commit, at most {@link #MAX_BATCH_SIZE}.
+     * @param collection The collection written to, whose rate limit the commits are scheduled under.
+     */
+    public BatchWriter(FirebaseFirestore db, int batchSize, String collection) {
+        this.db = db;
+        this.batchSize = Math.min(batchSize, MAX_BATCH_SIZE);
+        this.collection = collection;
+    }
+
+    /**
+     * Applies one write per target, committing them in chunks.
+     *
+     * @param targets  The targets to write, e.g. document references.
+     * @param write    Adds the write for one target to a batch.
+     * @param listener Notified after every committed chunk, or null.
+     * @param <T>      The type of target.
+     * @return A future completed with the number of targets written once every chunk is committed.
+     * If any chunk failed, it fails with a {@link PartialWriteException} once every chunk was
+     * tried; the chunks that succeeded stay committed.
+     */
+    public <T> CompletableFuture<Integer> writeAll(List<T> targets, BiConsumer<WriteBatch, T> write,
+                                                   OnBatchProgressListener listener) {
+        return writeAll(targets, 1, write, listener);
+    }
+
+    /**
+     * Applies a fixed number of writes per target, committing them in chunks that hold as many
+     * targets as fit in a batch. Each commit is charged for its operations, not its targets.
+     *
+     * @param targets      The targets to write, e.g. document references.
+     * @param opsPerTarget The number of operations {@code write} adds for each target.
+     * @param write        Adds the writes for one target to a batch.
+     * @param listener     Notified after every committed chunk, or null.
+     * @param <T>          The type of target.
+     * @return A future completed with the number of targets written once every chunk is committed.
+     * If any chunk failed, it fails with a {@link PartialWriteException} once every chunk was
+     * tried; the chunks that succeeded stay committed.
+     */
+    public <T> CompletableFuture<Integer> writeAll(List<T> targets, int opsPerTarget,
+                                                   BiConsumer<WriteBatch, T> write,
+                                                   OnBatchProgressListener listener) {
+        int chunkSize = Math.max(1, batchSize / opsPerTarget);
+        // Targets written and failed so far, and the first failure
+        int[] counts = new int[2];
+        Throwable[] firstFailure = new Throwable[1];
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (int start = 0; start < targets.size(); start += chunkSize) {
+            List<T> chunk = targets.subList(start, Math.min(start + chunkSize, targets.size()));
+            chain = chain.thenCompose(aVoid -> commit(chunk, chunk.size() * opsPerTarget, write).handle((committed, e) -> {
+                if (e != null) {
+                    counts[1] += chunk.size();
+                    if (firstFailure[0] == null) {
+                        firstFailure[0] = TaskFutures.unwrap(e);
+                    }
+                    return null;
+                }
+                counts[0] += chunk.size();
+                if (listener != null) {
+                    listener.onProgress(counts[0], targets.size());
+                }
+                return null;
+            }));
+        }
+        return chain.thenCompose(aVoid -> {
+            if (firstFailure[0] == null) {
+                return CompletableFuture.completedFuture(counts[0]);
+            }
+            return TaskFutures.failed(new PartialWriteException(counts[0], counts[1], firstFailure[0]));
+        });
+    }
+
+    private <T> CompletableFuture<Void> commit(List<T> chunk, int operations, BiConsumer<WriteBatch, T> write) {
+        WriteBatch batch = db.batch();
+        try {
+            for (T target : chunk) {
+                write.accept(batch, target);
+            }
+        } catch (RuntimeException e) {
+            return TaskFutures.failed(e);
+        }
+        return WriteScheduler.getInstance().submit(collection, operations,
+                () -> TaskFutures.toFuture(batch.commit()));
+    }
+
+    /**
+     * Deletes documents in chunked batches.
+     *
+     * @param refs     The documents to delete.
+     * @param listener Notified after every committed chunk, or null.
+     * @return A future completed with the number of deleted documents.
+     */
+    public CompletableFuture<Integer> deleteAll(List<DocumentReference> refs, OnBatchProgressListener listener) {
+        return writeAll(refs, WriteBatch::delete, listener);
+    }
+
+    /**
+     * Deletes every document matched by a query, reading it one page at a time so that the
+     * whole result set is never held in memory.
+     *
+     * @param query    The query whose documents are deleted.
+     * @param total    The expected number of documents for progress reports, or -1 if unknown.
+     * @param listener Notified after every committed page, or null.
+     * @return A future completed with the number of deleted documents.
+     */
+    public CompletableFuture<Integer> deleteQuery(Query query, long total, OnBatchProgressListener listener) {
+        return deletePage(query.orderBy(FieldPath.documentId()).limit(batchSize), null, 0, (int) total, listener);
+    }
+
+    private CompletableFuture<Integer> deletePage(Query page, DocumentSnapshot after, int deleted, int total,
+                                                  OnBatchProgressListener listener) {
+        Query next = after == null ? page : page.startAfter(after);
+        return TaskFutures.toFuture(next.get()).thenCompose(snapshot -> {
+            InventoryRepository.recordDocumentsRead(snapshot.size());
+            if (snapshot.isEmpty()) {
+                return CompletableFuture.completedFuture(deleted);
+            }
+            List<DocumentReference> refs = new ArrayList<>();
+            for (DocumentSnapshot document : snapshot.getDocuments()) {
+                refs.add(document.getReference());
+            }
+            DocumentSnapshot last = snapshot.getDocuments().get(snapshot.size() - 1);
+            return deleteAll(refs, null).thenCompose(count -> {
+                int soFar = deleted + count;
+                if (listener != null) {
+                    listener.onProgress(soFar, Math.max(total, soFar));
+                }
+                if (snapshot.size() < batchSize) {
+                    return CompletableFuture.completedFuture(soFar);
+                }
+                return deletePage(page, last, soFar, total, listener);
+            });
+        });
+    }
+
+    /**
+     * Thrown when some chunks of a chunked write failed while others were committed.
+     */
+    public static class PartialWriteException extends Exception {
+        private final int written;
+        private final int failed;
+
+        PartialWriteException(int written, int failed, Throwable cause) {
+            super(failed + " of " + (written + failed) + " writes failed", cause);
+            this.written = written;
+            this.failed = failed;
+        }
+
+        /**
+         * Returns the number of targets whose chunk was committed.
+         */
+        public int getWritten() {
+            return written;
+        }
+
+        /**
+         * Returns the number of targets whose chunk failed.
+         */
+        public int getFailed() {
+            return failed;
+        }
+    }
+
+    /**
+     * Interface for following the progress of a chunked write.
+     */
+    public interface OnBatchProgressListener {
+        /**
+         * Called after each committed chunk, on the thread that completed the commit.
+         *
+         * @param completed The number of operations committed so far.
+         * @param total     The total number of operations.
+         */
+        void onProgress(int completed, int total);
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.onestopshop;
+
+import android.util.Log;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.google.firebase.firestore.ListenerRegistration;
+import com.squareup.picasso.Callback;
+import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * Ties controller calls, snapshot listeners and image loads to the lifecycle of a screen.
+ * When the screen is destroyed every outstanding future is cancelled, every listener removed
+ * and every Picasso request tagged with this scope cancelled, so no callback reaches a dead view.
+ */
+public class CancellationScope implements LifecycleEventObserver {
+    private static final String TAG = "CancellationScope";
+    private static final AtomicLong cancelledCount = new AtomicLong();
+
+    private final Set<CompletableFuture<?>> futures = new HashSet<>();
+    private final List<ListenerRegistration> registrations = new ArrayList<>();
+    // Views with an image load in progress; a view that is re-bound replaces its previous load
+    private final Map<ImageView, Boolean> pendingImageLoads = new WeakHashMap<>();
+    private volatile boolean destroyed;
+
+    private CancellationScope() {
+    }
+
+    /**
+     * Creates a scope that is cancelled when the owner is destroyed. Must be called on the main thread.
+     *
+     * @param owner The activity or fragment that scopes the work.
+     * @return The new scope.
+     */
+    public static CancellationScope of(LifecycleOwner owner) {
+        CancellationScope scope = new CancellationScope();
+        owner.getLifecycle().addObserver(scope);
+        return scope;
+    }
+
+    /**
+     * Returns how many futures, listeners and image loads all scopes have cancelled so far,
+     * i.e. how much work finished screens no longer wait for.
+     */
+    public static long getCancelledCount() {
+        return cancelledCount.get();
+    }
+
+    /**
+     * Registers a future so that it is cancelled if the scope ends before it completes.
+     *
+     * @param future The future of a controller call.
+     * @param <T>    The result type.
+     * @return The same future, for chaining.
+     */
+    public <T> CompletableFuture<T> track(CompletableFuture<T> future) {
+        synchronized (futures) {
+            if (!destroyed) {
+                futures.add(future);
+            }
+        }
+        if (destroyed) {
+            if (cancel(future)) {
+                cancelledCount.incrementAndGet();
+            }
+        } else {
+            future.whenComplete((result, e) -> {
+                synchronized (futures) {
+                    futures.remove(future);
+                }
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Tracks a future and runs an action on the main thread when it completes, unless the
+     * scope has ended by then. This is the safe way to write a result into views.
+     *
+     * @param future The future of a controller call.
+     * @param action Receives the result, or the failure, on the main thread.
+     * @param <T>    The result type.
+     */
+    public <T> void deliver(CompletableFuture<T> future, BiConsumer<? super T, ? super Throwable> action) {
+        track(future).whenCompleteAsync((result, e) -> {
+            if (!destroyed) {
+                action.accept(result, e == null ? null : TaskFutures.unwrap(e));
+            }
+        }, AppExecutors.mainThread());
+    }
+
+    /**
+     * Registers a snapshot listener so that it is removed when the scope ends.
+     *
+     * @param registration The registration returned by Firestore.
+     * @return The same registration.
+     */
+    public ListenerRegistration track(ListenerRegistration registration) {
+        if (destroyed) {
+            registration.remove();
+            cancelledCount.incrementAndGet();
+        } else {
+            registrations.add(registration);
+        }
+        return registration;
+    }
+
+    /**
+     * Loads an image into a view with a request that is cancelled when the scope ends.
+     * Must be called on the main thread.
+     *
+     * @param request   The Picasso request to run.
+     * @param imageView The target view.
+     */
+    public void loadInto(RequestCreator request, ImageView imageView) {
+        if (destroyed) {
+            return;
+        }
+        pendingImageLoads.put(imageView, Boolean.TRUE);
+        request.tag(this).into(imageView, new Callback() {
+            @Override
+            public void onSuccess() {
+                pendingImageLoads.remove(imageView);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                pendingImageLoads.remove(imageView);
+            }
+        });
+    }
+
+    public boolean isDestroyed() {
+        return destroyed;
+    }
+
+    @Override
+    public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+        if (event != Lifecycle.Event.ON_DESTROY) {
+            return;
+        }
+        source.getLifecycle().removeObserver(this);
+        List<CompletableFuture<?>> outstanding;
+        synchronized (futures) {
+            destroyed = true;
+            outstanding = new ArrayList<>(futures);
+            futures.clear();
+        }
+        long cancelled = 0;
+        for (CompletableFuture<?> future : outstanding) {
+            if (cancel(future)) {
+                cancelled++;
+            }
+        }
+        for (ListenerRegistration registration : registrations) {
+            registration.remove();
+            cancelled++;
+        }
+        registrations.clear();
+        cancelled += pendingImageLoads.size();
+        pendingImageLoads.clear();
+        cancelledCount.addAndGet(cancelled);
+        Picasso.get().cancelTag(this);
+        if (cancelled > 0) {
+            Log.d(TAG, "Cancelled " + cancelled + " pending operations, " + cancelledCount.get() + " in total");
+        }
+    }
+
+    private static boolean cancel(CompletableFuture<?> future) {
+        return future.cancel(false);
+    }
+}
@@ -11,6 +11,7 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import android.widget.CheckBox;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
@@ -30,6 +31,7 @@ public class CustomList extends RecyclerView.Adapter<CustomList.ViewHolder> {
     private final Context context;
     private ArrayList<Item> inventory;
     private boolean checkboxVisible;
+    private ThumbnailLoader thumbnailLoader;
 
     /**
      * Constructs a new CustomList.
@@ -53,12 +55,22 @@ public class CustomList extends RecyclerView.Adapter<CustomList.ViewHolder> {
         notifyDataSetChanged();
     }
 
+    /**
+     * Sets the loader used to show a thumbnail of each item's first photo
+     * @param thumbnailLoader
+     *      Loader shared by the adapters of one RecyclerView
+     */
+    public void setThumbnailLoader(ThumbnailLoader thumbnailLoader) {
+        this.thumbnailLoader = thumbnailLoader;
+    }
+
     /**
      * ViewHolder class representing each item view in the RecyclerView.
      */
     public class ViewHolder extends RecyclerView.ViewHolder {
         TextView itemName, purchaseDate, estimatedValue;
         ChipGroup tags;
+        ImageView thumbnail;
 
         CheckBox checkBox;
 
@@ -70,6 +82,7 @@ public class CustomList extends RecyclerView.Adapter<CustomList.ViewHolder> {
             estimatedValue = itemView.findViewById(R.id.estimatedValue);
             tags = itemView.findViewById(R.id.tags);
             checkBox = itemView.findViewById(R.id.itemCheckBox);
+            thumbnail = itemView.findViewById(R.id.itemThumbnail);
 
             // Set a click listener for the checkbox
             checkBox.setOnClickListener(new View.OnClickListener() {
@@ -114,6 +127,9 @@ public class CustomList extends RecyclerView.Adapter<CustomList.ViewHolder> {
         Item item = inventory.get(position);
 
         holder.itemName.setText(item.getItemName());
+        if (thumbnailLoader != null) {
+            thumbnailLoader.bind(holder.thumbnail, item.getItemId());
+        }
 
         // Checkbox appearance relies on checkboxVisible
         holder.checkBox.setVisibility(this.checkboxVisible ? View.VISIBLE : View.INVISIBLE);
@@ -139,9 +155,9 @@ public class CustomList extends RecyclerView.Adapter<CustomList.ViewHolder> {
             // Create an Intent to start ViewActivity
             Intent intent = new Intent(view.getContext(), ViewItemActivity.class);
 
-
+            // The item itself goes through the in-process cache so the details show instantly
+            new InventoryController().shareItem(selectedItem);
             intent.putExtra("itemId", selectedItem.getItemId());
-            // Include other item details as needed
 
             // Start the ViewActivity
             view.getContext().startActivity(intent);
@@ -150,6 +166,19 @@ public class CustomList extends RecyclerView.Adapter<CustomList.ViewHolder> {
 
     }
 
+    /**
+     * Called when a row scrolls away and its view is recycled; cancels its thumbnail load.
+     *
+     * @param holder The ViewHolder being recycled.
+     */
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        super.onViewRecycled(holder);
+        if (thumbnailLoader != null) {
+            thumbnailLoader.unbind(holder.thumbnail);
+        }
+    }
+
     /**
      * Returns the total number of items in the data set held by the adapter.
      *
@@ -15,6 +15,8 @@ import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 
+import com.google.firebase.firestore.ListenerRegistration;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -31,6 +33,7 @@ public class EditGalleryActivity extends AppCompatActivity
     private Button deleteBtn;
     private Button backBtn;
     private ActivityResultLauncher<Intent> pickImageLauncher;
+    private CancellationScope cancellationScope;
 
 
 
@@ -50,11 +53,16 @@ public class EditGalleryActivity extends AppCompatActivity
         deleteBtn = findViewById(R.id.btnDelete);
         backBtn = findViewById(R.id.back_button);
         photoList = new ArrayList<>();
+        cancellationScope = CancellationScope.of(this);
         photosController = new PhotosController(itemId);
-        photosController.setOnPhotoListUpdateListener(this);
+        ListenerRegistration registration = photosController.setOnPhotoListUpdateListener(this);
+        if (registration != null) {
+            cancellationScope.track(registration);
+        }
         addBtn.setOnClickListener(v -> showPhotoOptionsDialog());
         recyclerView.setLayoutManager(new GridLayoutManager(this, 2));
         photoAdapter = new PhotoAdapter(photoList);
+        photoAdapter.setCancellationScope(cancellationScope);
         recyclerView.setAdapter(photoAdapter);
 
         pickImageLauncher = registerForActivityResult(new ActivityResultContracts.StartActivityForResult(),
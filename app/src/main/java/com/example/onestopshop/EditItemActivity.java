@@ -8,7 +8,8 @@ import androidx.core.content.ContextCompat;
 import android.app.DatePickerDialog;
 import android.content.Intent;
 import android.os.Bundle;
-import android.text.TextUtils;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.text.method.ScrollingMovementMethod;
 import android.util.Log;
 import android.view.View;
@@ -23,7 +24,7 @@ import com.google.android.material.chip.Chip;
 import com.google.android.material.chip.ChipGroup;
 import com.squareup.picasso.Picasso;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
 
@@ -51,6 +52,14 @@ public class EditItemActivity extends AppCompatActivity {
     private ImageView itemPhoto;
     private ImageView scanButton;
     private Button scanBarcodeButton;
+    // Tags as last displayed, to tell whether the user changed them
+    private List<String> displayedTags;
+    // The item as last loaded, to send only the fields the user changed
+    private Item originalItem;
+    // True while the form is being filled programmatically
+    private boolean displaying;
+    private boolean fieldsEdited;
+    private CancellationScope cancellationScope;
     private final ActivityResultLauncher<Intent> startForSerialNumberResult =
             registerForActivityResult(new ActivityResultContracts.StartActivityForResult(),
                     result -> {
@@ -109,75 +118,95 @@ public class EditItemActivity extends AppCompatActivity {
         Intent intent = getIntent();
         String itemId = intent.getStringExtra("itemId");
 
+        cancellationScope = CancellationScope.of(this);
         inventoryController = new InventoryController();
         photosController = new PhotosController(itemId);
         tagsController = new TagsController();
-        inventoryController.getItemById(itemId, new InventoryController.OnItemFetchListener() {
+        confirm.setOnClickListener(new View.OnClickListener() {
             @Override
-            public void onItemFetched(Item item) {
-                displayItemDetails(item);
-                confirm.setOnClickListener(new View.OnClickListener() {
-                    @Override
-                    public void onClick(View v) {
-                        String itemName = itemNameText.getText().toString();
-                        String description = descriptionText.getText().toString();
-                        descriptionText.setMovementMethod(new ScrollingMovementMethod());
-                        String purchaseDate = purchaseDateText.getText().toString();
-                        String make = makeText.getText().toString();
-                        commentsText.setMovementMethod(new ScrollingMovementMethod());
-                        String model = modelText.getText().toString();
+            public void onClick(View v) {
+                if (selectedTags == null) {
+                    // The item has not been loaded yet
+                    return;
+                }
+                String itemName = itemNameText.getText().toString();
+                String description = descriptionText.getText().toString();
+                descriptionText.setMovementMethod(new ScrollingMovementMethod());
+                String purchaseDate = purchaseDateText.getText().toString();
+                String make = makeText.getText().toString();
+                commentsText.setMovementMethod(new ScrollingMovementMethod());
+                String model = modelText.getText().toString();
 
-                        String serialNumber = serialNumberText.getText().toString();
-                        Double estimatedValue = 0.0;
-                        if(estimatedValueText.getText().toString() != null && estimatedValueText.getText().toString().isEmpty() == false) {
-                            try {
-                                estimatedValue = Double.parseDouble(estimatedValueText.getText().toString());
-                            }
-                            catch(Exception e) {
-                                Toast.makeText(EditItemActivity.this, "Invalid Estimated Value", Toast.LENGTH_SHORT).show();
-                                return;
-                            }
-                        }else {
-                            Toast.makeText(EditItemActivity.this, "Invalid Estimated Value", Toast.LENGTH_SHORT).show();
-                            return;
-                        }
-                        String comments = commentsText.getText().toString();
-                        boolean valid = validItem(new Item(itemName, description, purchaseDate, make,
-                                model, estimatedValue, comments, serialNumber, selectedTags));
-                        if(valid){
-                            inventoryController = new InventoryController();
-                            inventoryController.updateItem(itemId, new Item(itemName, description, purchaseDate, make,
-                                    model, estimatedValue, comments, serialNumber, selectedTags));
-                            finish();
-                        }
+                String serialNumber = serialNumberText.getText().toString();
+                Double estimatedValue = 0.0;
+                if(estimatedValueText.getText().toString() != null && estimatedValueText.getText().toString().isEmpty() == false) {
+                    try {
+                        estimatedValue = Double.parseDouble(estimatedValueText.getText().toString());
                     }
-                });
+                    catch(Exception e) {
+                        Toast.makeText(EditItemActivity.this, "Invalid Estimated Value", Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                }else {
+                    Toast.makeText(EditItemActivity.this, "Invalid Estimated Value", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                String comments = commentsText.getText().toString();
+                boolean valid = validItem(new Item(itemName, description, purchaseDate, make,
+                        model, estimatedValue, comments, serialNumber, selectedTags));
+                if(valid){
+                    // Send only what changed since the item was loaded; skip the write if nothing did
+                    ItemDelta delta = ItemDelta.between(originalItem, new Item(itemName, description,
+                            purchaseDate, make, model, estimatedValue, comments, serialNumber, selectedTags));
+                    inventoryController.updateItem(itemId, delta).whenComplete((aVoid, e) -> {
+                        if (e != null) {
+                            // The edit has been rolled back; this screen may already be gone
+                            Toast.makeText(getApplicationContext(), "Could not save changes to "
+                                    + itemName, Toast.LENGTH_LONG).show();
+                        }
+                    });
+                    finish();
+                }
             }
+        });
 
-            @Override
-            public void onItemFetchFailed() {
-
+        // Render the cached copy immediately and revalidate it in the background
+        Item cachedItem = inventoryController.getCachedItem(itemId);
+        if (cachedItem != null) {
+            displayItemDetails(cachedItem);
+        }
+        cancellationScope.deliver(inventoryController.getItemById(itemId), (item, e) -> {
+            if (e != null) {
+                if (cachedItem == null) {
+                    Toast.makeText(EditItemActivity.this, "Error fetching item details.", Toast.LENGTH_SHORT).show();
+                }
+            } else if (!isFormEdited()) {
+                // Never overwrite changes the user has already made
+                displayItemDetails(item);
             }
         });
 
-        photosController.getDownloadUrl(new PhotosController.DownloadUrlCallback() {
+        TextWatcher editWatcher = new TextWatcher() {
             @Override
-            public void onSuccess(String downloadUrl) {
-                if (downloadUrl != null && !downloadUrl.isEmpty()) {
-                    Picasso.get().load(downloadUrl).into(itemPhoto);
-                    itemPhoto.setBackgroundColor(0);
-                } else {
-                    // If there's no download URL leave the default image
-
-                }
+            public void beforeTextChanged(CharSequence text, int start, int count, int after) {
             }
 
             @Override
-            public void onFailure(Exception e) {
-                // Handle failure
+            public void onTextChanged(CharSequence text, int start, int before, int count) {
+            }
 
+            @Override
+            public void afterTextChanged(Editable editable) {
+                if (!displaying) {
+                    fieldsEdited = true;
+                }
             }
-        });
+        };
+        for (EditText field : new EditText[]{itemNameText, descriptionText, purchaseDateText, makeText,
+                modelText, serialNumberText, estimatedValueText, commentsText}) {
+            field.addTextChangedListener(editWatcher);
+        }
+
         scanButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -202,11 +231,12 @@ public class EditItemActivity extends AppCompatActivity {
         addTagBtn.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                tagsController.fetchExistingTags(new TagsController.OnTagsFetchListener() {
+                tagsController.fetchTagUsage(new TagsController.OnTagUsageFetchListener() {
                     @Override
-                    public void onSuccess(List<String> existingTags) {
+                    public void onSuccess(List<TagUsage> existingTags) {
                         // send existing tags to dialog
                         TagDialog tagDialog = new TagDialog(EditItemActivity.this,selectedTags, existingTags, tagsGroup);
+                        tagDialog.setItemDetails(makeText.getText().toString(), modelText.getText().toString());
                         tagDialog.show();
                     }
 
@@ -232,28 +262,20 @@ public class EditItemActivity extends AppCompatActivity {
     public void onResume() {
         super.onResume();
         Log.d("EditItemActivity", "onResume");
-        photosController.getDownloadUrl(new PhotosController.DownloadUrlCallback() {
-            @Override
-            public void onSuccess(String downloadUrl) {
-                Log.d("EditItemActivity", "onResume-SgotDurl");
-                if (downloadUrl != null && !downloadUrl.isEmpty()) {
-                    Log.d("EditItemActivity", "onResume-SgotDurlexists");
-                    Picasso.get().load(downloadUrl).into(itemPhoto);
-                    itemPhoto.setBackgroundColor(0);
-                } else {
-                    // If there's no download URL leave the default image
-                    Log.d("EditItemActivity", "onResume-SgotDurlNotexists");
-                    itemPhoto.setImageResource(R.drawable.baseline_image_24);
-                    int defaultColor = ContextCompat.getColor(EditItemActivity.this, R.color.defaultPurple);
-                    itemPhoto.setBackgroundColor(defaultColor);
-                }
-            }
-
-            @Override
-            public void onFailure(Exception e) {
+        cancellationScope.deliver(photosController.getDownloadUrl(), (downloadUrl, e) -> {
+            if (e != null) {
                 // Handle failure
                 Log.d("EditItemActivity", "onResume-Failure");
-
+            } else if (downloadUrl != null && !downloadUrl.isEmpty()) {
+                Log.d("EditItemActivity", "onResume-SgotDurlexists");
+                cancellationScope.loadInto(Picasso.get().load(downloadUrl), itemPhoto);
+                itemPhoto.setBackgroundColor(0);
+            } else {
+                // If there's no download URL leave the default image
+                Log.d("EditItemActivity", "onResume-SgotDurlNotexists");
+                itemPhoto.setImageResource(R.drawable.baseline_image_24);
+                int defaultColor = ContextCompat.getColor(EditItemActivity.this, R.color.defaultPurple);
+                itemPhoto.setBackgroundColor(defaultColor);
             }
         });
     }
@@ -263,6 +285,8 @@ public class EditItemActivity extends AppCompatActivity {
      * @param item The item whose details should be displayed.
      */
     private void displayItemDetails(Item item) {
+        displaying = true;
+        originalItem = item;
         // Update views with the retrieved item data
         itemNameText.setText(item.getItemName());
         descriptionText.setText(item.getDescription());
@@ -281,8 +305,20 @@ public class EditItemActivity extends AppCompatActivity {
         }
         commentsText.setText(commentsStr);
 
-        selectedTags = item.getTags();
+        // Copy the tags so that edits never touch the cached item
+        selectedTags = new ArrayList<>(item.getTags());
+        displayedTags = new ArrayList<>(selectedTags);
         displayTags(tagsGroup, selectedTags);
+        displaying = false;
+    }
+
+    /**
+     * Checks whether the user has changed any field since the item was displayed.
+     *
+     * @return True if a text field or the tags were changed.
+     */
+    private boolean isFormEdited() {
+        return fieldsEdited || (selectedTags != null && !selectedTags.equals(displayedTags));
     }
     /**
      * Validates the input fields of the item.
@@ -290,37 +326,11 @@ public class EditItemActivity extends AppCompatActivity {
      * @return True if the item is valid; false otherwise.
      */
     public boolean validItem(Item item) {
-        boolean valid = true;
-        if(item.getItemName() == null || item.getItemName().isEmpty()) {
-            Toast.makeText(EditItemActivity.this, "Invalid Product Name", Toast.LENGTH_SHORT).show();
-            valid = false;
-        }
-        else if(item.getDescription() == null || item.getDescription().isEmpty()) {
-            Toast.makeText(EditItemActivity.this, "Invalid Description", Toast.LENGTH_SHORT).show();
-            valid = false;
-        }
-        else if(TextUtils.isEmpty(item.getPurchaseDate())){
-            Toast.makeText(EditItemActivity.this, "Invalid Purchase Date", Toast.LENGTH_SHORT).show();
-            valid = false;
+        String error = ItemValidator.validate(item);
+        if (error != null) {
+            Toast.makeText(EditItemActivity.this, error, Toast.LENGTH_SHORT).show();
         }
-        else if(item.getMake() == null || item.getMake().isEmpty()) {
-            Toast.makeText(EditItemActivity.this, "Invalid Make", Toast.LENGTH_SHORT).show();
-            valid = false;
-        }
-        else if(item.getModel() == null || item.getModel().isEmpty()) {
-            Toast.makeText(EditItemActivity.this, "Invalid Model", Toast.LENGTH_SHORT).show();
-            valid = false;
-        }
-        else if(item.getEstimatedValue() < 0) {
-            Toast.makeText(EditItemActivity.this, "Value must be greater than 0", Toast.LENGTH_SHORT).show();
-            valid = false;
-        }
-        else if(selectedTags.size() == 0) {
-            Toast.makeText(EditItemActivity.this, "Must have at least one tag", Toast.LENGTH_SHORT).show();
-            valid = false;
-        }
-
-        return valid;
+        return error == null;
     }
     /**
      * Displays the selected tags in the ChipGroup.
@@ -329,6 +339,7 @@ public class EditItemActivity extends AppCompatActivity {
      * @param tags      The list of tags to be displayed.
      */
     private void displayTags(ChipGroup chipGroup, List<String> tags) {
+        chipGroup.removeAllViews();
         for (String tag : tags) {
             Chip chip = new Chip(this, null, com.google.android.material.R.style.Widget_MaterialComponents_Chip_Action);
             chip.setText(tag);
@@ -0,0 +1,27 @@
+package com.example.onestopshop;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Derives document IDs from the natural key of what a document describes, so that
+ * writing the same thing twice (a retry, a double tap, a second device) targets the same
+ * document instead of creating a duplicate. Writes under such IDs must be sets or other
+ * idempotent operations.
+ */
+public final class IdempotencyKeys {
+    private IdempotencyKeys() {
+    }
+
+    /**
+     * Returns a stable document ID for a value.
+     *
+     * @param namespace What the value identifies, e.g. "barcode", so that equal values of
+     *                  different kinds get different IDs.
+     * @param value     The natural key, which may contain characters not allowed in IDs.
+     * @return A name-based UUID string.
+     */
+    public static String fromValue(String namespace, String value) {
+        return UUID.nameUUIDFromBytes((namespace + ":" + value).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+}
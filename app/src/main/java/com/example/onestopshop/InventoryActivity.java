@@ -2,8 +2,6 @@ package com.example.onestopshop;
 
 import android.content.Intent;
 import android.os.Bundle;
-import android.text.TextUtils;
-import android.util.Log;
 
 import android.view.View;
 import android.widget.AdapterView;
@@ -18,6 +16,7 @@ import android.widget.ImageButton;
 import android.widget.LinearLayout;
 import android.widget.Spinner;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
@@ -29,8 +28,6 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import java.util.ArrayList;
 
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -42,14 +39,20 @@ public class InventoryActivity extends AppCompatActivity implements InventoryCon
 
     private ArrayList<Item> dataList;
 
-    private ArrayList<Item> originalDataList;
-
-    private ArrayList<Item> filteredData;
+    // Latest items from the controller, in snapshot order
+    private List<Item> originalDataList;
+    private InventoryQuery query;
+    // Incremented for every preparation so that stale results are dropped
+    private int preparedGeneration;
+    // The tag tree of treeItems, built at most once per snapshot. Used on the background executor only
+    private List<Item> treeItems;
+    private TagTree tagTree;
+    // Collapses bursts of snapshots (bulk deletes, tagging) into one list rebuild per frame
+    private UpdateCoalescer<List<Item>> snapshotCoalescer;
     private RecyclerView recyclerView;
     private CustomList itemAdapter;
-    private boolean isFiltered;
+    private ThumbnailLoader thumbnailLoader;
     private ImageButton filterButton;
-    CustomList filteredItemsAdapter;
     private InventoryController inventoryController;
     private TextView totalValueTextView;
     private double totalEstimatedValue;
@@ -65,9 +68,6 @@ public class InventoryActivity extends AppCompatActivity implements InventoryCon
     private ImageButton switchSortButton; // Separate button for ascending/descending
     private boolean isAscending = true;
 
-    private String startDate, endDate, makeFilter;
-    private ArrayList<String> tagsFilter;
-
     private final ActivityResultLauncher<Intent> filterActivityLauncher =
             registerForActivityResult(new ActivityResultContracts.StartActivityForResult(), result -> {
                 if (result.getResultCode() == this.RESULT_OK) {
@@ -75,33 +75,14 @@ public class InventoryActivity extends AppCompatActivity implements InventoryCon
                     Intent filtersIntent = result.getData();
                     boolean clear = filtersIntent.getBooleanExtra("clear", false);
                     if(clear) {
-                        recyclerView.setAdapter(itemAdapter);
-                        totalEstimatedValue = 0;
-                        for(Item item : dataList) {
-                            totalEstimatedValue += item.getEstimatedValue();
-                        }
-                        totalValueTextView.setText("$" + String.format("%.2f", totalEstimatedValue));
-                        startDate = "";
-                        endDate = "";
-                        makeFilter = "";
-                        tagsFilter = new ArrayList<>();
-                        isFiltered = false;
-                        return;
-                    }
-                    startDate = filtersIntent.getStringExtra("startDate");
-                    endDate = filtersIntent.getStringExtra("endDate");
-                    makeFilter = filtersIntent.getStringExtra("make");
-                    tagsFilter = filtersIntent.getStringArrayListExtra("tags");
-                    filteredData = filterData(dataList, startDate, endDate, makeFilter, tagsFilter);
-                    filteredItemsAdapter = new CustomList(this, filteredData);
-                    recyclerView.setAdapter(filteredItemsAdapter);
-                    totalEstimatedValue = 0;
-                    for(Item item : filteredData) {
-                        totalEstimatedValue += item.getEstimatedValue();
+                        query = query.withFilters("", "", "", new ArrayList<>());
+                    } else {
+                        query = query.withFilters(filtersIntent.getStringExtra("startDate"),
+                                filtersIntent.getStringExtra("endDate"),
+                                filtersIntent.getStringExtra("make"),
+                                filtersIntent.getStringArrayListExtra("tags"));
                     }
-                    totalValueTextView.setText("$" + String.format("%.2f", totalEstimatedValue));
-                    isFiltered = true;
-                    filteredItemsAdapter.notifyDataSetChanged();
+                    refreshList();
 
                     // Handle the received data
                 } else {
@@ -118,13 +99,13 @@ public class InventoryActivity extends AppCompatActivity implements InventoryCon
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_inventory);
-        isFiltered = false;
-        startDate = "";
-        endDate = "";
-        makeFilter = "";
-        tagsFilter = new ArrayList<>();
+        query = new InventoryQuery();
+        snapshotCoalescer = new UpdateCoalescer<>(items -> {
+            originalDataList = items;
+            refreshList();
+        }, UpdateCoalescer.DEFAULT_MAX_LATENCY_MS);
         inventoryController = new InventoryController(); // Initialize the Inventory Controller
-        inventoryController.setListener(this);
+        inventoryController.observe(this, this);
         dataList = new ArrayList<>();
         originalDataList = new ArrayList<>();
 
@@ -139,17 +120,16 @@ public class InventoryActivity extends AppCompatActivity implements InventoryCon
         totalValueLayout = findViewById(R.id.total_value_layout);
         multipleSelectButtons = findViewById(R.id.multipleSelectBtns);
         checkboxVisible = false;
+        thumbnailLoader = new ThumbnailLoader();
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        thumbnailLoader.attachTo(recyclerView);
         itemAdapter = new CustomList(this, dataList);
+        itemAdapter.setThumbnailLoader(thumbnailLoader);
         recyclerView.setAdapter(itemAdapter);
         deselectAll();
         sortSpinner = findViewById(R.id.sort_spinner);
         switchSortButton = findViewById(R.id.switch_sort); // Separate button for ascending/descending
 
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
-        itemAdapter = new CustomList(this, dataList);
-        recyclerView.setAdapter(itemAdapter);
-
         addButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -168,10 +148,10 @@ public class InventoryActivity extends AppCompatActivity implements InventoryCon
             public void onClick(View v) {
                 Intent intent = new Intent(InventoryActivity.this, FilterActivity.class);
                 //give filter activity previous filters
-                intent.putExtra("endDateFilter", endDate);
-                intent.putExtra("startDateFilter", startDate);
-                intent.putExtra("makeFilter", makeFilter);
-                intent.putStringArrayListExtra("tagsFilter", tagsFilter);
+                intent.putExtra("endDateFilter", query.getEndDate());
+                intent.putExtra("startDateFilter", query.getStartDate());
+                intent.putExtra("makeFilter", query.getMakeFilter());
+                intent.putStringArrayListExtra("tagsFilter", new ArrayList<>(query.getTagsFilter()));
                 filterActivityLauncher.launch(intent);
             }
         });
@@ -218,8 +198,15 @@ public class InventoryActivity extends AppCompatActivity implements InventoryCon
                         }
                     }
                 }
-                // Call Inventory Controller for multiple delete
-                inventoryController.deleteMultipleItems(selectedItemIds);
+                // Call Inventory Controller for multiple delete, committed in batches
+                inventoryController.deleteMultipleItems(selectedItemIds, null)
+                        .whenCompleteAsync((deleted, e) -> {
+                            if (isFinishing()) {
+                                return;
+                            }
+                            String message = e == null ? "Deleted " + deleted + " items" : "Failed to delete items";
+                            Toast.makeText(InventoryActivity.this, message, Toast.LENGTH_SHORT).show();
+                        }, AppExecutors.mainThread());
                 itemAdapter.notifyDataSetChanged();
 
             }
@@ -239,11 +226,7 @@ public class InventoryActivity extends AppCompatActivity implements InventoryCon
             public void onItemSelected(AdapterView<?> parentView, View selectedItemView, int position, long id) {
                 // Handle the sorting based on the selected item
                 String selectedSortCriteria = parentView.getItemAtPosition(position).toString();
-                if (isFiltered) {
-                    sortItemList(selectedSortCriteria, filteredData);
-                } else {
-                    sortItemList(selectedSortCriteria, dataList);
-                }
+                sortItemList(selectedSortCriteria);
 
             }
 
@@ -258,12 +241,7 @@ public class InventoryActivity extends AppCompatActivity implements InventoryCon
             public void onClick(View v) {
                 // Toggle between ascending and descending
                 isAscending = !isAscending;
-
-                if (isFiltered) {
-                    sortItemList(sortSpinner.getSelectedItem().toString(), filteredData);
-                } else {
-                    sortItemList(sortSpinner.getSelectedItem().toString(), dataList);
-                }
+                sortItemList(sortSpinner.getSelectedItem().toString());
                 updateSwitchSortButtonAppearance();
             }
         });
@@ -273,81 +251,56 @@ public class InventoryActivity extends AppCompatActivity implements InventoryCon
 
 
     @Override
-    public void onInventoryDataChanged(ArrayList<Item> updatedData) {
-        dataList.clear();
-        dataList.addAll(updatedData);
-        originalDataList.clear();
-        originalDataList.addAll(updatedData);
-        totalValueTextView.setText("$" + String.format("%.2f", calculateTotalEstimatedValue()));
-        itemAdapter.notifyDataSetChanged();
+    protected void onRestart() {
+        super.onRestart();
+        // Photos may have been added or removed on another screen
+        thumbnailLoader.invalidate();
     }
 
-    /**
-     * Filters the data based on the provided filters.
-     *
-     * @param updatedData List of items to be filtered.
-     * @param startDate   Start date filter.
-     * @param endDate     End date filter.
-     * @param makeFilter  Make filter.
-     * @param tagsFilter  Tags filter.
-     * @return Filtered list of items.
-     */
-    public ArrayList<Item> filterData(ArrayList<Item> updatedData, String startDate, String endDate, String makeFilter, ArrayList<String> tagsFilter) {
-        ArrayList<Item> filteredList = new ArrayList<>();
-        boolean passFilter;
-        Log.d("Debug", makeFilter);
-        for (Item item : updatedData) {
-            Log.d("Debug", item.getItemName());
-
-            passFilter = true;
-
-            // Check startDate filter
-            if (!TextUtils.isEmpty(startDate)) {
-                Log.d("Inside", "dB");
-                passFilter = passFilter && item.getPurchaseDate().compareTo(startDate) >= 0;
-            }
-
-            // Check endDate filter
-            if (!TextUtils.isEmpty(endDate)) {
-                Log.d("Inside", "dA");
-                passFilter = passFilter && item.getPurchaseDate().compareTo(endDate) <= 0;
-            }
-
-            // Check makeFilter
-            if (!TextUtils.isEmpty(makeFilter)) {
-                Log.d("Inside", "make");
-                passFilter = passFilter && item.getMake().equals(makeFilter);
-
-            }
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        snapshotCoalescer.cancel();
+    }
 
-            // Check tagsFilter
-            if (tagsFilter != null && tagsFilter.size()>0) {
-                Log.d("Inside", "tags:" + tagsFilter.size());
-                passFilter = passFilter && itemContainsAnyTags(item, tagsFilter);
-            }
+    @Override
+    public void onInventoryDataChanged(List<Item> updatedData) {
+        snapshotCoalescer.submit(updatedData);
+    }
 
-            // If all conditions are met, add the item to the filtered list
-            if (passFilter) {
-                filteredList.add(item);
+    /**
+     * Filters, sorts and totals the latest items on the background executor and
+     * shows the finished result. Results of superseded preparations are dropped.
+     */
+    private void refreshList() {
+        final List<Item> items = originalDataList;
+        final InventoryQuery currentQuery = query;
+        final int generation = ++preparedGeneration;
+        AppExecutors.background().execute(() -> {
+            if (currentQuery.needsTagTree() && treeItems != items) {
+                tagTree = new TagTree(items);
+                treeItems = items;
             }
-        }
-        Log.d("Debug", "" + filteredList.size());
-        return filteredList;
+            InventoryView view = currentQuery.prepare(items, treeItems == items ? tagTree : null);
+            AppExecutors.mainThread().execute(() -> {
+                if (generation == preparedGeneration && !isFinishing()) {
+                    showInventoryView(view);
+                }
+            });
+        });
     }
+
     /**
-     * Checks if an item contains any of the specified tags.
+     * Displays a prepared inventory view.
      *
-     * @param item       The item to check.
-     * @param tagsFilter List of tags to check against.
-     * @return True if the item contains any of the specified tags, false otherwise.
+     * @param view The filtered and sorted items with their total.
      */
-    private boolean itemContainsAnyTags(Item item, ArrayList<String> tagsFilter) {
-        for (String tag : tagsFilter) {
-            if (item.getTags().contains(tag)) {
-                return true;
-            }
-        }
-        return false;
+    private void showInventoryView(InventoryView view) {
+        dataList.clear();
+        dataList.addAll(view.getItems());
+        totalEstimatedValue = view.getTotalEstimatedValue();
+        totalValueTextView.setText("$" + String.format("%.2f", totalEstimatedValue));
+        itemAdapter.notifyDataSetChanged();
     }
 
     /**
@@ -399,10 +352,6 @@ public class InventoryActivity extends AppCompatActivity implements InventoryCon
     }
 
     public double calculateTotalEstimatedValue() {
-        double totalEstimatedValue = 0;
-        for (Item item : dataList) {
-            totalEstimatedValue += item.getEstimatedValue();
-        }
         return totalEstimatedValue;
     }
 
@@ -410,45 +359,12 @@ public class InventoryActivity extends AppCompatActivity implements InventoryCon
      * Sorts the item list based on the selected sorting criteria.
      *
      * @param selectedSortCriteria The selected sorting criteria.
-     * @param unsortedList         The unsorted list of items.
      */
-    private void sortItemList(String selectedSortCriteria, ArrayList<Item> unsortedList) {
+    private void sortItemList(String selectedSortCriteria) {
         // Extract sorting details
         String sortField = selectedSortCriteria.split(" ")[0];
-        if ("None".equals(sortField)) {
-            sortItemsByNone();
-            return;
-        }
-
-        // Use the appropriate comparator based on the selected criteria
-        switch (sortField) {
-            case "Date":
-                sortItemsByDate(unsortedList);
-                break;
-            case "Description":
-                sortItemsByDescription(unsortedList);
-                break;
-            case "Make":
-                sortItemsByMake(unsortedList);
-                break;
-            case "Estimated":
-                sortItemsByEstimatedValue(unsortedList);
-                break;
-            case "Tag":
-                sortItemsByTag(unsortedList);
-                break;
-
-        }
-
-        // Notify the adapter of the data change
-        if(isFiltered) {
-            filteredItemsAdapter.notifyDataSetChanged();
-        }
-        else {
-            itemAdapter.notifyDataSetChanged();
-        }
-
-
+        query = query.withSort(sortField, isAscending);
+        refreshList();
     }
 
     /**
@@ -462,153 +378,6 @@ public class InventoryActivity extends AppCompatActivity implements InventoryCon
         }
     }
 
-    /**
-     * Sorts the list of items by their purchase date.
-     *
-     * @param unsortedList The unsorted list of items.
-     */
-    private void sortItemsByDate(ArrayList<Item> unsortedList) {
-        Collections.sort(unsortedList, new Comparator<Item>() {
-            @Override
-            public int compare(Item item1, Item item2) {
-                return item1.getPurchaseDate().compareTo(item2.getPurchaseDate());
-            }
-        });
-        if (!isAscending) {
-            Collections.reverse(unsortedList);
-        }
-    }
-
-
-    /**
-     * Sorts the list of items by "None" (original order).
-     */
-    private void sortItemsByNone() {
-        dataList.clear();
-        dataList.addAll(originalDataList);
-
-        // Notify the adapter of the data change
-        if (isFiltered) {
-            filteredItemsAdapter.notifyDataSetChanged();
-        } else {
-            itemAdapter.notifyDataSetChanged();
-        }
-    }
-
-
-
-    /**
-     * Sorts the list of items by their tags.
-     *
-     * @param unsortedList The unsorted list of items.
-     */
-    public void sortItemsByTag(List<Item> unsortedList) {
-        Collections.sort(unsortedList, new Comparator<Item>() {
-            @Override
-            public int compare(Item item1, Item item2) {
-                // Get the first tag of each item for comparison
-                String tag1 = item1.getTags().isEmpty() ? "" : item1.getTags().get(0);
-                String tag2 = item2.getTags().isEmpty() ? "" : item2.getTags().get(0);
-
-                int result = tag1.compareTo(tag2);
-
-                // Return the comparison result
-                return result;
-            }
-
-        });
-        if (!isAscending) {
-            Collections.reverse(unsortedList);
-        }
-    }
-
-
-
-    /**
-     * Sorts the list of items by their description.
-     *
-     * @param unsortedList The unsorted list of items.
-     */
-    private void sortItemsByDescription(ArrayList<Item> unsortedList) {
-        Collections.sort(unsortedList, new Comparator<Item>() {
-            @Override
-            public int compare(Item item1, Item item2) {
-                String description1 = item1.getDescription();
-                String description2 = item2.getDescription();
-
-                // Handle null descriptions
-                if (description1 == null && description2 == null) {
-                    return 0;
-                } else if (description1 == null) {
-                    return -1;
-                } else if (description2 == null) {
-                    return 1;
-                }
-
-                int result = description1.compareTo(description2);
-
-                // Adjust result based on the ascending order
-                return isAscending ? result : -result;
-            }
-        });
-
-        // Reverse the list
-        Collections.reverse(unsortedList);
-    }
-
-
-
-
-    /**
-     * Sorts the list of items by their make.
-     *
-     * @param unsortedList The unsorted list of items.
-     */
-    private void sortItemsByMake(ArrayList<Item> unsortedList) {
-        Collections.sort(unsortedList, new Comparator<Item>() {
-            @Override
-            public int compare(Item item1, Item item2) {
-                // Check if the make contains a number
-
-                String make1 = item1.getMake();
-                String make2 = item2.getMake();
-
-                if (make1 == null && make2 == null) {
-                    return 0;
-                } else if (make1 == null) {
-                    return -1;
-                } else if (make2 == null) {
-                    return 1;
-                }
-
-                int result = make1.compareTo(make2);
-
-                // Adjust result based on the ascending order
-                return isAscending ? result : -result;
-            }
-        });
-
-        // Reverse the list
-        Collections.reverse(unsortedList);
-    }
-
-    /**
-     * Sorts the list of items by their estimated value.
-     *
-     * @param unsortedList The unsorted list of items.
-     */
-    private void sortItemsByEstimatedValue(ArrayList<Item> unsortedList) {
-        Collections.sort(unsortedList, new Comparator<Item>() {
-            @Override
-            public int compare(Item item1, Item item2) {
-                return Double.compare(item1.getEstimatedValue(), item2.getEstimatedValue());
-            }
-        });
-        if (!isAscending) {
-            Collections.reverse(unsortedList);
-        }
-    }
-
     /**
      * Navigates to the SearchActivity to perform a search operation.
      *
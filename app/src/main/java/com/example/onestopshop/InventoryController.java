@@ -2,23 +2,24 @@ package com.example.onestopshop;
 
 import android.util.Log;
 
-import androidx.annotation.NonNull;
+import androidx.lifecycle.LifecycleOwner;
 
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.AggregateQuerySnapshot;
+import com.google.firebase.firestore.AggregateSource;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
-import com.google.firebase.firestore.QuerySnapshot;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * InventoryController manages interactions with the Firebase Firestore database for inventory-related data.
@@ -26,141 +27,166 @@ import java.util.Map;
 public class InventoryController {
 
     private CollectionReference itemsRef;
+    private final InventoryRepository repository;
+    private final TagRegistry tagRegistry;
+    private final Executor callbackExecutor;
 
     private OnInventoryUpdateListener listener;
     /**
-     * Constructs a new InventoryController and sets up a listener for inventory data changes.
+     * Constructs a new InventoryController backed by the shared {@link InventoryRepository}.
+     * Creating a controller does not register any snapshot listener.
      */
     public InventoryController() {
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
-        String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
-        itemsRef = db.collection("users").document(userId).collection("items");
+        this(AppExecutors.background());
+    }
 
-        itemsRef.addSnapshotListener((queryDocumentSnapshots, e) -> {
-            if (e != null) {
-                // Handle errors
-                return;
-            }
-            if (queryDocumentSnapshots != null) {
-                ArrayList<Item> updatedData = new ArrayList<>();
-                for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
-                    String itemId = doc.getString("itemId");
-                    String itemName = doc.getString("itemName");
-                    String make = doc.getString("make");
-                    String model = doc.getString("model");
-                    String purchaseDate = doc.getString("purchaseDate");
-                    double estimatedValue = doc.getDouble("estimatedValue");
-                    List<String> tags = (List<String>) doc.get("tags");
-
-                    Item item = new Item(itemId, itemName, purchaseDate, make, model, estimatedValue, tags);
-                    updatedData.add(item);
-                }
-                if (listener != null) {
-                    listener.onInventoryDataChanged(updatedData);
-                }
-            }
-        });
+    /**
+     * Constructs a new InventoryController that parses the results of one-off reads on the
+     * given executor. Only finished results are posted to the main thread.
+     *
+     * @param callbackExecutor The executor on which query results are parsed.
+     */
+    public InventoryController(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        repository = InventoryRepository.getInstance();
+        itemsRef = repository.getItemsRef();
+        tagRegistry = TagRegistry.getInstance();
+    }
+
+    /**
+     * Delivers inventory updates to a listener while the owner is started.
+     * The shared snapshot listener is detached automatically when the owner stops.
+     *
+     * @param owner    The activity or fragment whose lifecycle scopes the listener.
+     * @param listener The listener receiving the items on the main thread.
+     */
+    public void observe(LifecycleOwner owner, OnInventoryUpdateListener listener) {
+        repository.observe(owner, listener);
+    }
+
+    /**
+     * Delivers live updates of a single item while the owner is started.
+     *
+     * @param owner    The activity or fragment whose lifecycle scopes the listener.
+     * @param itemId   The ID of the item to observe.
+     * @param listener Receives the item on every change, or a failure once the item is deleted.
+     */
+    public void observeItem(LifecycleOwner owner, String itemId, OnItemFetchListener listener) {
+        repository.observeItem(owner, itemId, listener);
+    }
+
+    /**
+     * Hands an item that is already in memory to the next screen, so that it can be shown
+     * without waiting for Firestore.
+     *
+     * @param item The item about to be opened.
+     */
+    public void shareItem(Item item) {
+        repository.getItemCache().put(item);
     }
+    /**
+     * Allocates the ID of a new item on the client, without any network round trip.
+     * Photos can be uploaded under this ID while the item itself is still being written.
+     *
+     * @return A fresh item ID.
+     */
+    public String newItemId() {
+        return itemsRef.document().getId();
+    }
+
     /**
      * Adds a new item to the inventory in Firestore.
      *
      * @param newItem The item to be added.
+     * @return A future completed with the ID of the added item.
      */
-    public void addItem(Item newItem) {
-        Map<String, Object> itemData = new HashMap<>();
-        itemData.put("itemName", newItem.getItemName());
-        itemData.put("purchaseDate", newItem.getPurchaseDate());
-        itemData.put("estimatedValue", newItem.getEstimatedValue());
-        itemData.put("tags", newItem.getTags());
-        itemData.put("serialNumber", newItem.getSerialNumber());
-        itemData.put("make", newItem.getMake());
-        itemData.put("model", newItem.getModel());
-        itemData.put("comments", newItem.getComments());
-        itemData.put("description", newItem.getDescription());
-
-        // Add the new item to Firestore
-        itemsRef.add(itemData)
-                .addOnSuccessListener(documentReference -> {
-                    // Retrieve the auto-generated document ID and set it in the Item object
-                    String itemId = documentReference.getId();
-                    //Add field with autogenerated ID for making deletions easier
-                    itemsRef.document(itemId).update("itemId", itemId);
-                })
-                .addOnFailureListener(e -> {
-                    // Handle failure to add the item to Firestore
-                });
+    public CompletableFuture<String> addItem(Item newItem) {
+        return addItem(newItemId(), newItem);
     }
+
     /**
-     * Adds a new item to the inventory in Firestore but has a callback for the itemId .
+     * Adds a new item under a pre-allocated ID. The whole document, including its itemId
+     * field, is written with a single set.
      *
+     * @param itemId  The ID from {@link #newItemId()}.
      * @param newItem The item to be added.
+     * @return A future completed with the ID of the added item.
      */
-    public void addItem(Item newItem, ItemAddedCallback callback) {
-        Map<String, Object> itemData = new HashMap<>();
-        itemData.put("itemName", newItem.getItemName());
-        itemData.put("purchaseDate", newItem.getPurchaseDate());
-        itemData.put("estimatedValue", newItem.getEstimatedValue());
-        itemData.put("tags", newItem.getTags());
-        itemData.put("serialNumber", newItem.getSerialNumber());
-        itemData.put("make", newItem.getMake());
-        itemData.put("model", newItem.getModel());
-        itemData.put("comments", newItem.getComments());
-        itemData.put("description", newItem.getDescription());
-
-        // Add the new item to Firestore
-        itemsRef.add(itemData)
-                .addOnSuccessListener(documentReference -> {
-                    // Retrieve the auto-generated document ID and set it in the Item object
-                    String itemId = documentReference.getId();
-                    //Add field with autogenerated ID for making deletions easier
-                    itemsRef.document(itemId).update("itemId", itemId);
-                    // Call the callback with the added itemId
-                    callback.onItemAdded(itemId);
-                })
-                .addOnFailureListener(e -> {
-                    // Handle failure to add the item to Firestore
-                });
+    public CompletableFuture<String> addItem(String itemId, Item newItem) {
+        Map<String, Object> itemData = toItemData(newItem);
+        // Stored as a field as well for making deletions easier
+        itemData.put("itemId", itemId);
+        CompletableFuture<String> write = WriteJournal.getInstance()
+                .enqueue(PendingMutation.set(itemsRef.document(itemId).getPath(), itemData))
+                .thenApply(aVoid -> itemId);
+        // Tags are recounted only once the item is stored
+        write.thenRun(() -> tagRegistry.recordChanges(Collections.emptyList(), tagsOf(newItem)));
+        return write;
     }
 
-
     /**
      * Updates an existing item in the inventory in Firestore.
+     * The edit is shown in the inventory immediately and rolled back if the write fails.
      *
      * @param itemId  The ID of the item to be updated.
      * @param newItem The updated item data.
+     * @return A future completed when the update is committed.
      */
-    public void updateItem(String itemId, Item newItem) {
+    public CompletableFuture<Void> updateItem(String itemId, Item newItem) {
         DocumentReference itemRef = itemsRef.document(itemId);
-        Map<String, Object> itemData = new HashMap<>();
-        itemData.put("itemName", newItem.getItemName());
-        itemData.put("purchaseDate", newItem.getPurchaseDate());
-        itemData.put("estimatedValue", newItem.getEstimatedValue());
-        itemData.put("tags", newItem.getTags());
-        itemData.put("serialNumber", newItem.getSerialNumber());
-        itemData.put("make", newItem.getMake());
-        itemData.put("model", newItem.getModel());
-        itemData.put("comments", newItem.getComments());
-        itemData.put("description", newItem.getDescription());
-
-        // Update the item in Firestore
-        itemRef.update(itemData)
-                .addOnSuccessListener(documentReference -> {
-
-                })
-                .addOnFailureListener(e -> {
-                    // Handle failure to add the item to Firestore
-                });
+        StringPool pool = InventoryRepository.getFieldPool();
+        Item edited = new Item(itemId, newItem.getItemName(), newItem.getDescription(), newItem.getPurchaseDate(),
+                pool.intern(newItem.getMake()), pool.intern(newItem.getModel()), newItem.getEstimatedValue(),
+                newItem.getComments(), newItem.getSerialNumber(), pool.internAll(newItem.getTags()));
+        Item current = repository.getItemCache().get(itemId);
+        // Update the item in Firestore; the local cache shows the edit at once
+        CompletableFuture<Void> write = optimistically(repository.addPendingChange(itemId, edited),
+                WriteJournal.getInstance().enqueue(PendingMutation.update(itemRef.getPath(), toItemData(newItem))));
+        // Without the cached item every edited tag is recounted
+        List<String> before = current != null ? tagsOf(current) : Collections.emptyList();
+        write.thenRun(() -> tagRegistry.recordChanges(before, tagsOf(edited)));
+        return write;
     }
 
     /**
-     * Searches item names and descriptions for keyword
-     * @param keywords
-     * @param listener
+     * Updates only the changed fields of an item. Tag additions and removals are sent as
+     * array transforms. Nothing is written if the delta is empty. The edit is shown in the
+     * inventory immediately and rolled back if the write fails.
+     *
+     * @param itemId The ID of the item to be updated.
+     * @param delta  The changes made to the item.
+     * @return A future completed when the update is committed.
      */
-    public void searchItemsByKeywords(String keywords, OnInventorySearchListener listener) {
-        itemsRef.get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    ArrayList<Item> mySearchData = new ArrayList<>();
+    public CompletableFuture<Void> updateItem(String itemId, ItemDelta delta) {
+        if (delta.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        PendingMutation mutation = PendingMutation.update(itemsRef.document(itemId).getPath(), delta.getChangedFields());
+        if (!delta.getAddedTags().isEmpty()) {
+            mutation = mutation.withArrayUnion("tags", delta.getAddedTags());
+        } else if (!delta.getRemovedTags().isEmpty()) {
+            mutation = mutation.withArrayRemove("tags", delta.getRemovedTags());
+        }
+        Item current = repository.getItemCache().get(itemId);
+        InventoryRepository.PendingChange change =
+                current == null ? null : repository.addPendingChange(itemId, delta.applyTo(current));
+        CompletableFuture<Void> write = optimistically(change, WriteJournal.getInstance().enqueue(mutation));
+        write.thenRun(() -> tagRegistry.recordChanges(delta.getTagChanges()));
+        return write;
+    }
+
+    /**
+     * Searches item names and descriptions for keyword.
+     * Documents are parsed on the controller's executor.
+     *
+     * @param keywords The lower case keywords to look for.
+     * @return A future completed with the matching items.
+     */
+    public CompletableFuture<List<Item>> searchItemsByKeywords(String keywords) {
+        return TaskFutures.toFuture(itemsRef.get())
+                .thenApplyAsync(queryDocumentSnapshots -> {
+                    InventoryRepository.recordDocumentsRead(queryDocumentSnapshots.size());
+                    List<Item> mySearchData = new ArrayList<>();
                     for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
                         Item item = doc.toObject(Item.class);
                         if (item.getItemName().toLowerCase().contains(keywords)
@@ -168,44 +194,160 @@ public class InventoryController {
                             mySearchData.add(item);
                         }
                     }
-                    listener.onSearchAnswer(mySearchData);
-                })
-                .addOnFailureListener(e -> {
-                    listener.Error(e.getMessage());
-                });
+                    return mySearchData;
+                }, callbackExecutor);
+    }
+
+    /**
+     * Searches item names and descriptions for keyword
+     * @param keywords
+     * @param listener
+     */
+    public void searchItemsByKeywords(String keywords, OnInventorySearchListener listener) {
+        searchItemsByKeywords(keywords).whenCompleteAsync((searchResults, e) -> {
+            if (e != null) {
+                listener.Error(TaskFutures.unwrap(e).getMessage());
+            } else {
+                listener.onSearchAnswer(new ArrayList<>(searchResults));
+            }
+        }, AppExecutors.mainThread());
     }
 
 
 
     /**
      * Deletes an item from the inventory in Firestore.
+     * The item disappears from the inventory immediately and comes back if the delete fails.
      *
      * @param itemId The ID of the item to be deleted.
+     * @return A future completed when the delete is committed.
+     */
+    public CompletableFuture<Void> deleteItem(String itemId) {
+        Item current = repository.getItemCache().get(itemId);
+        CompletableFuture<Void> write = optimistically(repository.addPendingChange(itemId, null),
+                WriteJournal.getInstance().enqueue(PendingMutation.delete(itemsRef.document(itemId).getPath())));
+        if (current != null) {
+            write.thenRun(() -> tagRegistry.recordChanges(tagsOf(current), Collections.emptyList()));
+        }
+        return write;
+    }
+
+    private static List<String> tagsOf(Item item) {
+        return item.getTags() == null ? Collections.emptyList() : item.getTags();
+    }
+
+    /**
+     * Keeps a local change visible until its write settles. A confirmed change is then carried
+     * by the snapshots; a failed one is rolled back.
+     *
+     * @param change The local change, or null if there is none.
+     * @param write  The write of the change.
+     * @return A future completed on the main thread once the change is confirmed or rolled back.
      */
-    public void deleteItem(String itemId) {
-        itemsRef.document(itemId).delete();
+    private CompletableFuture<Void> optimistically(InventoryRepository.PendingChange change,
+                                                   CompletableFuture<Void> write) {
+        if (change == null) {
+            return write;
+        }
+        return write.whenCompleteAsync((aVoid, e) -> repository.removePendingChange(change),
+                AppExecutors.mainThread());
     }
-    public void deleteMultipleItems(ArrayList<String> itemIds) {
-        for(String itemId: itemIds) {
-            itemsRef.document(itemId).delete();
+
+    /**
+     * Deletes several items from the inventory in Firestore.
+     * The deletes are committed in atomic batches of up to {@link BatchWriter#MAX_BATCH_SIZE}.
+     *
+     * @param itemIds The IDs of the items to be deleted.
+     * @return A future completed when all deletes are committed.
+     */
+    public CompletableFuture<Void> deleteMultipleItems(ArrayList<String> itemIds) {
+        return deleteMultipleItems(itemIds, null).thenApply(count -> null);
+    }
+
+    /**
+     * Deletes several items from the inventory in Firestore in atomic batches.
+     *
+     * @param itemIds  The IDs of the items to be deleted.
+     * @param listener Notified after every committed batch, or null.
+     * @return A future completed with the number of deleted items.
+     */
+    public CompletableFuture<Integer> deleteMultipleItems(List<String> itemIds,
+                                                         BatchWriter.OnBatchProgressListener listener) {
+        List<DocumentReference> refs = new ArrayList<>();
+        Map<String, Long> tagChanges = new HashMap<>();
+        for (String itemId : itemIds) {
+            refs.add(itemsRef.document(itemId));
+            Item current = repository.getItemCache().get(itemId);
+            if (current != null) {
+                TagUsage.addChanges(tagChanges, tagsOf(current), Collections.emptyList());
+            }
         }
+        // Recounting is exact, so deleted items are counted even if some batches failed
+        return new BatchWriter().deleteAll(refs, listener)
+                .whenComplete((count, e) -> tagRegistry.recordChanges(tagChanges));
+    }
+
+    /**
+     * Deletes every item of the inventory.
+     *
+     * @return A future completed when all deletes are committed.
+     */
+    public CompletableFuture<Void> clearInventory(){
+        return clearInventory(null).thenApply(count -> null);
     }
-    public void clearInventory(){
-        itemsRef.get().addOnCompleteListener(new OnCompleteListener<QuerySnapshot>() {
-            @Override
-            public void onComplete(@NonNull Task<QuerySnapshot> task) {
-                if (task.isSuccessful()){
-                    // Delete documents in the collection
-                    for (DocumentSnapshot document : task.getResult()) {
-                        document.getReference().delete();
+
+    /**
+     * Deletes every item of the inventory, reading and deleting one page of items per batch.
+     *
+     * @param listener Notified after every committed batch, or null.
+     * @return A future completed with the number of deleted items.
+     */
+    public CompletableFuture<Integer> clearInventory(BatchWriter.OnBatchProgressListener listener) {
+        // The count is only used for progress, so clear anyway if it cannot be read
+        return TaskFutures.toFuture(itemsRef.count().get(AggregateSource.SERVER))
+                .thenApply(AggregateQuerySnapshot::getCount)
+                .exceptionally(e -> -1L)
+                .thenCompose(total -> new BatchWriter().deleteQuery(itemsRef, total, listener))
+                .whenComplete((count, e) -> {
+                    if (e != null) {
+                        Log.d("ClearInventory", "Failed to clear inventory", e);
+                    } else {
+                        tagRegistry.clear();
                     }
-                }
-                else {
-                    Log.d("ClearInventory", "Failed to get Docs");
-                }
-            }
-        });
+                });
+    }
+
+    /**
+     * Returns the copy of an item held in memory, if any. It comes from the live inventory
+     * snapshot or an earlier fetch and can be shown while {@link #getItemById(String)} revalidates it.
+     *
+     * @param itemId The ID of the item.
+     * @return The cached item, or null if it is not cached.
+     */
+    public Item getCachedItem(String itemId) {
+        return repository.getItemCache().get(itemId);
     }
+
+    /**
+     * Fetches details of an item from the inventory by its ID.
+     * Concurrent fetches of the same item share one request, and the result is cached.
+     *
+     * @param itemId The ID of the item to be fetched.
+     * @return A future completed with the item, or failed with
+     *         {@link NoSuchElementException} if the item does not exist.
+     */
+    public CompletableFuture<Item> getItemById(String itemId) {
+        return repository.getItemCache().fetch(itemId, id ->
+                TaskFutures.toFuture(itemsRef.document(id).get())
+                        .thenApply(documentSnapshot -> {
+                            InventoryRepository.recordDocumentsRead(1);
+                            if (!documentSnapshot.exists()) {
+                                throw new NoSuchElementException("No item with ID " + id);
+                            }
+                            return InventoryRepository.toItem(documentSnapshot);
+                        }));
+    }
+
     /**
      * Fetches details of an item from the inventory by its ID.
      *
@@ -213,18 +355,30 @@ public class InventoryController {
      * @param listener Callback for handling the fetched item or failure.
      */
     public void getItemById(String itemId, final OnItemFetchListener listener) {
-        itemsRef.document(itemId).get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        Item item = documentSnapshot.toObject(Item.class);
-                        listener.onItemFetched(item);
-                    } else {
-                        listener.onItemFetchFailed();
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    listener.onItemFetchFailed();
-                });
+        getItemById(itemId).whenComplete((item, e) -> {
+            if (e != null) {
+                listener.onItemFetchFailed();
+            } else {
+                listener.onItemFetched(item);
+            }
+        });
+    }
+
+    /**
+     * Builds the Firestore fields of an item, without its itemId field.
+     */
+    static Map<String, Object> toItemData(Item item) {
+        Map<String, Object> itemData = new HashMap<>();
+        itemData.put("itemName", item.getItemName());
+        itemData.put("purchaseDate", item.getPurchaseDate());
+        itemData.put("estimatedValue", item.getEstimatedValue());
+        itemData.put("tags", item.getTags());
+        itemData.put("serialNumber", item.getSerialNumber());
+        itemData.put("make", item.getMake());
+        itemData.put("model", item.getModel());
+        itemData.put("comments", item.getComments());
+        itemData.put("description", item.getDescription());
+        return itemData;
     }
     public String getUserEmail(){
         FirebaseAuth auth = FirebaseAuth.getInstance();
@@ -263,15 +417,32 @@ public class InventoryController {
 
 
 
+    /**
+     * Sets the listener for inventory updates without lifecycle management.
+     * Passing null detaches the previous listener; prefer {@link #observe} from activities.
+     *
+     * @param listener The listener receiving the items on the main thread, or null.
+     */
     public void setListener(OnInventoryUpdateListener listener) {
+        if (this.listener != null) {
+            repository.removeListener(this.listener);
+        }
         this.listener = listener;
+        if (listener != null) {
+            repository.addListener(listener);
+        }
     }
 
     /**
      * Interface for receiving inventory data update events.
      */
     public interface OnInventoryUpdateListener {
-        void onInventoryDataChanged(ArrayList<Item> updatedData);
+        /**
+         * Called on the main thread with the parsed items.
+         *
+         * @param updatedData The current items. The list is immutable.
+         */
+        void onInventoryDataChanged(List<Item> updatedData);
     }
     /**
      * Interface for fetching details of a specific item.
@@ -280,9 +451,6 @@ public class InventoryController {
         void onItemFetched(Item item);
         void onItemFetchFailed();
     }
-    public interface ItemAddedCallback {
-        void onItemAdded(String addedItemId);
-    }
     public interface OnInventorySearchListener {
         void onSearchAnswer(ArrayList<Item> searchResults);
         void Error(String errorMessage);
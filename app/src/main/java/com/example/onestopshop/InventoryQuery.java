@@ -0,0 +1,210 @@
+package com.example.onestopshop;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable description of how the inventory list is filtered and sorted.
+ * Preparing a view is pure computation, so it can run on a background thread.
+ */
+public final class InventoryQuery {
+    private final String startDate;
+    private final String endDate;
+    private final String makeFilter;
+    private final List<String> tagsFilter;
+    private final String sortField;
+    private final boolean ascending;
+
+    /**
+     * Creates a query without filters or sorting.
+     */
+    public InventoryQuery() {
+        this("", "", "", new ArrayList<>(), "None", true);
+    }
+
+    /**
+     * Creates a query.
+     *
+     * @param startDate  Earliest purchase date, empty for no bound.
+     * @param endDate    Latest purchase date, empty for no bound.
+     * @param makeFilter Make the items must have, empty for any make.
+     * @param tagsFilter Tags of which an item must have at least one, empty for any tags. A
+     *                   hierarchical tag such as "office/it" also matches the tags below it.
+     * @param sortField  First word of the selected sort criteria, e.g. "Date" or "None".
+     * @param ascending  Whether to sort in ascending order.
+     */
+    public InventoryQuery(String startDate, String endDate, String makeFilter, List<String> tagsFilter,
+                          String sortField, boolean ascending) {
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.makeFilter = makeFilter;
+        this.tagsFilter = tagsFilter == null ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(tagsFilter));
+        this.sortField = sortField;
+        this.ascending = ascending;
+    }
+
+    /**
+     * Returns a copy of this query with different filters.
+     */
+    public InventoryQuery withFilters(String startDate, String endDate, String makeFilter, List<String> tagsFilter) {
+        return new InventoryQuery(startDate, endDate, makeFilter, tagsFilter, sortField, ascending);
+    }
+
+    /**
+     * Returns a copy of this query with a different sort order.
+     */
+    public InventoryQuery withSort(String sortField, boolean ascending) {
+        return new InventoryQuery(startDate, endDate, makeFilter, tagsFilter, sortField, ascending);
+    }
+
+    public boolean isFiltered() {
+        return !isEmpty(startDate) || !isEmpty(endDate) || !isEmpty(makeFilter) || !tagsFilter.isEmpty();
+    }
+
+    /**
+     * Checks whether preparing a view needs the {@link TagTree} of the items.
+     */
+    public boolean needsTagTree() {
+        return !tagsFilter.isEmpty();
+    }
+
+    /**
+     * Filters, sorts and totals the given items, building their tag tree if it is needed.
+     *
+     * @param items The items in their original (snapshot) order. Not modified.
+     * @return The prepared, immutable view.
+     */
+    public InventoryView prepare(List<Item> items) {
+        return prepare(items, needsTagTree() ? new TagTree(items) : null);
+    }
+
+    /**
+     * Filters, sorts and totals the given items.
+     *
+     * @param items   The items in their original (snapshot) order. Not modified.
+     * @param tagTree The tag tree of exactly these items, or null if {@link #needsTagTree()} is false.
+     * @return The prepared, immutable view.
+     */
+    public InventoryView prepare(List<Item> items, TagTree tagTree) {
+        TagTree.Subtrees tagSubtrees = tagsFilter.isEmpty() ? null : tagTree.subtrees(tagsFilter);
+        List<Item> result = filterData(items, tagSubtrees);
+        Comparator<Item> comparator = comparatorFor(sortField);
+        if (comparator != null) {
+            Collections.sort(result, ascending ? comparator : Collections.reverseOrder(comparator));
+        }
+        double total;
+        if (tagSubtrees != null && tagSubtrees.getItemCount() >= 0
+                && isEmpty(startDate) && isEmpty(endDate) && isEmpty(makeFilter)) {
+            // Every item in a single subtree passes, and the tree already totals them
+            total = tagSubtrees.getTotalValue();
+        } else {
+            total = 0;
+            for (Item item : result) {
+                total += item.getEstimatedValue();
+            }
+        }
+        return new InventoryView(result, total);
+    }
+
+    /**
+     * Filters the items based on this query's filters.
+     *
+     * @param items       List of items to be filtered.
+     * @param tagSubtrees The subtrees of the filter tags, or null if there are none.
+     * @return Filtered list of items.
+     */
+    private List<Item> filterData(List<Item> items, TagTree.Subtrees tagSubtrees) {
+        List<Item> filteredList = new ArrayList<>();
+        for (Item item : items) {
+            boolean passFilter = true;
+            if (!isEmpty(startDate)) {
+                passFilter = item.getPurchaseDate().compareTo(startDate) >= 0;
+            }
+            if (passFilter && !isEmpty(endDate)) {
+                passFilter = item.getPurchaseDate().compareTo(endDate) <= 0;
+            }
+            if (passFilter && !isEmpty(makeFilter)) {
+                passFilter = makeFilter.equals(item.getMake());
+            }
+            if (passFilter && tagSubtrees != null) {
+                passFilter = itemContainsAnyTags(item, tagSubtrees);
+            }
+            if (passFilter) {
+                filteredList.add(item);
+            }
+        }
+        return filteredList;
+    }
+
+    /**
+     * Checks if an item has any tag in the filtered subtrees, i.e. any of the filter tags or a
+     * tag below one of them.
+     *
+     * @param item        The item to check.
+     * @param tagSubtrees The subtrees of the filter tags.
+     * @return True if the item contains any of the specified tags, false otherwise.
+     */
+    static boolean itemContainsAnyTags(Item item, TagTree.Subtrees tagSubtrees) {
+        return tagSubtrees.containsItem(item);
+    }
+
+    /**
+     * Returns the ascending comparator for a sort field, or null to keep the original order.
+     */
+    private static Comparator<Item> comparatorFor(String sortField) {
+        switch (sortField) {
+            case "Date":
+                return (item1, item2) -> compareNullable(item1.getPurchaseDate(), item2.getPurchaseDate());
+            case "Description":
+                return (item1, item2) -> compareNullable(item1.getDescription(), item2.getDescription());
+            case "Make":
+                return (item1, item2) -> compareNullable(item1.getMake(), item2.getMake());
+            case "Estimated":
+                return (item1, item2) -> Double.compare(item1.getEstimatedValue(), item2.getEstimatedValue());
+            case "Tag":
+                // Compare the first tag of each item
+                return (item1, item2) -> firstTag(item1).compareTo(firstTag(item2));
+            default:
+                return null;
+        }
+    }
+
+    private static String firstTag(Item item) {
+        List<String> tags = item.getTags();
+        return tags == null || tags.isEmpty() ? "" : tags.get(0);
+    }
+
+    private static int compareNullable(String value1, String value2) {
+        if (value1 == null && value2 == null) {
+            return 0;
+        } else if (value1 == null) {
+            return -1;
+        } else if (value2 == null) {
+            return 1;
+        }
+        return value1.compareTo(value2);
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    public String getStartDate() {
+        return startDate;
+    }
+
+    public String getEndDate() {
+        return endDate;
+    }
+
+    public String getMakeFilter() {
+        return makeFilter;
+    }
+
+    public List<String> getTagsFilter() {
+        return tagsFilter;
+    }
+}
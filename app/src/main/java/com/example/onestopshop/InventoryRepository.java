@@ -0,0 +1,535 @@
+package com.example.onestopshop;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide holder of the signed-in user's inventory.
+ * All screens share a single snapshot listener on the items collection. The listener is
+ * reference counted: it is registered when the first observer attaches and removed shortly
+ * after the last one detaches, so moving between screens does not re-read the collection.
+ */
+public class InventoryRepository {
+    // Keeps the listener alive across screen transitions (stop of one screen, start of the next)
+    private static final long DETACH_DELAY_MS = 5000;
+
+    private static InventoryRepository instance;
+    private static final AtomicInteger activeListeners = new AtomicInteger();
+    private static final AtomicLong documentsRead = new AtomicLong();
+    // Makes, models and tags take few distinct values; a larger pool would mostly hold one-offs.
+    // A new generation starts with each snapshot, so the pool follows the values in use
+    private static final StringPool fieldPool = new StringPool(4096);
+
+    private final String userId;
+    private final CollectionReference itemsRef;
+    private final Executor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<InventoryController.OnInventoryUpdateListener> observers = new ArrayList<>();
+    private final Runnable detachRunnable = this::removeRegistration;
+    private final ItemCache itemCache = new ItemCache();
+    // Fed by the live snapshot on the background executor; only items whose tags, make or model
+    // changed are recounted. Kept while detached, since items change rarely and the add and edit
+    // screens, which stop the inventory screen, need it; a new user gets a new repository
+    private final TagCooccurrence countedTags = new TagCooccurrence();
+    // A copy of the counts for the main thread, replaced whenever they change
+    private TagCooccurrence tagCooccurrence = new TagCooccurrence();
+    private ListenerRegistration registration;
+    private List<Item> latestItems;
+    // One shared document listener per observed item
+    private final Map<String, SharedDocument> documents = new HashMap<>();
+    // Bulk tag edits shown ahead of the server, keyed by item ID, until their job finishes
+    private final Map<String, List<TagEdit>> pendingTagEdits = new HashMap<>();
+    // Single-item edits and deletes shown ahead of the server, keyed by item ID, until their write settles.
+    // Kept in memory only: after a restart the write journal replays unconfirmed writes into the
+    // Firestore cache before the first snapshot, so the snapshots show them instead
+    private final Map<String, List<PendingChange>> pendingChanges = new HashMap<>();
+
+    private InventoryRepository(String userId, Executor executor) {
+        this.userId = userId;
+        this.executor = executor;
+        itemsRef = FirebaseFirestore.getInstance().collection("users").document(userId).collection("items");
+    }
+
+    /**
+     * Returns the repository of the signed-in user, creating it if needed.
+     * A new repository replaces the old one when a different user signs in.
+     *
+     * @return The shared repository.
+     */
+    public static synchronized InventoryRepository getInstance() {
+        String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
+        if (instance == null || !instance.userId.equals(userId)) {
+            if (instance != null) {
+                instance.removeRegistration();
+            }
+            instance = new InventoryRepository(userId, AppExecutors.background());
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the number of Firestore snapshot listeners currently registered by the repository.
+     */
+    public static int getActiveListenerCount() {
+        return activeListeners.get();
+    }
+
+    /**
+     * Returns the number of documents read from the server since the process started.
+     */
+    public static long getDocumentsRead() {
+        return documentsRead.get();
+    }
+
+    /**
+     * Records documents read by one-off queries so that they show up in {@link #getDocumentsRead()}.
+     *
+     * @param count The number of documents read.
+     */
+    static void recordDocumentsRead(long count) {
+        documentsRead.addAndGet(count);
+    }
+
+    /**
+     * Returns the pool that item makes, models and tags are canonicalized with, so that items
+     * built outside a snapshot share their values with the snapshot's items.
+     */
+    static StringPool getFieldPool() {
+        return fieldPool;
+    }
+
+    public CollectionReference getItemsRef() {
+        return itemsRef;
+    }
+
+    /**
+     * Returns the per-item cache fed by the live snapshot.
+     */
+    public ItemCache getItemCache() {
+        return itemCache;
+    }
+
+    /**
+     * Returns the tag co-occurrence counts of the items in the latest snapshot. They stay
+     * available after the listener is detached. Must be used on the main thread.
+     */
+    public TagCooccurrence getTagCooccurrence() {
+        return tagCooccurrence;
+    }
+
+    /**
+     * Attaches a listener while the owner is started and detaches it when the owner stops.
+     * The listener is forgotten when the owner is destroyed. Must be called on the main thread.
+     *
+     * @param owner    The activity or fragment whose lifecycle scopes the listener.
+     * @param listener The listener receiving inventory updates on the main thread.
+     */
+    public void observe(LifecycleOwner owner, InventoryController.OnInventoryUpdateListener listener) {
+        owner.getLifecycle().addObserver(new LifecycleEventObserver() {
+            @Override
+            public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+                if (event == Lifecycle.Event.ON_START) {
+                    addListener(listener);
+                } else if (event == Lifecycle.Event.ON_STOP) {
+                    removeListener(listener);
+                } else if (event == Lifecycle.Event.ON_DESTROY) {
+                    source.getLifecycle().removeObserver(this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Attaches a listener until {@link #removeListener} is called. The latest known items are
+     * delivered right away. Must be called on the main thread.
+     *
+     * @param listener The listener receiving inventory updates on the main thread.
+     */
+    public void addListener(InventoryController.OnInventoryUpdateListener listener) {
+        if (observers.contains(listener)) {
+            return;
+        }
+        observers.add(listener);
+        mainHandler.removeCallbacks(detachRunnable);
+        if (registration == null) {
+            // Restores and replays writes left from an earlier run, so the first snapshot has them
+            WriteJournal.getInstance();
+            registration = itemsRef.addSnapshotListener(executor, (queryDocumentSnapshots, e) -> {
+                if (e != null || queryDocumentSnapshots == null) {
+                    // Handle errors
+                    return;
+                }
+                List<Item> items = parseItems(queryDocumentSnapshots);
+                // Pending local edits are left out of the counts until the server has them
+                TagCooccurrence counts = countedTags.sync(items) ? countedTags.copy() : null;
+                mainHandler.post(() -> publish(items, counts));
+            });
+            activeListeners.incrementAndGet();
+        }
+        if (latestItems != null) {
+            listener.onInventoryDataChanged(withPendingEdits(latestItems));
+        }
+    }
+
+    /**
+     * Detaches a listener. The snapshot listener is removed a few seconds after the last
+     * listener detaches unless another one attaches in the meantime.
+     *
+     * @param listener The listener to detach.
+     */
+    public void removeListener(InventoryController.OnInventoryUpdateListener listener) {
+        if (observers.remove(listener) && observers.isEmpty()) {
+            mainHandler.removeCallbacks(detachRunnable);
+            mainHandler.postDelayed(detachRunnable, DETACH_DELAY_MS);
+        }
+    }
+
+    /**
+     * Delivers live updates of a single item while the owner is started.
+     * Observers of the same item share one document listener. Must be called on the main thread.
+     *
+     * @param owner    The activity or fragment whose lifecycle scopes the listener.
+     * @param itemId   The ID of the item to observe.
+     * @param listener Receives the item on every change, or a failure once the item is deleted.
+     */
+    public void observeItem(LifecycleOwner owner, String itemId, InventoryController.OnItemFetchListener listener) {
+        owner.getLifecycle().addObserver(new LifecycleEventObserver() {
+            @Override
+            public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+                if (event == Lifecycle.Event.ON_START) {
+                    addItemListener(itemId, listener);
+                } else if (event == Lifecycle.Event.ON_STOP) {
+                    removeItemListener(itemId, listener);
+                } else if (event == Lifecycle.Event.ON_DESTROY) {
+                    source.getLifecycle().removeObserver(this);
+                }
+            }
+        });
+    }
+
+    /**
+     * Attaches a listener to a single item until {@link #removeItemListener} is called.
+     *
+     * @param itemId   The ID of the item to observe.
+     * @param listener Receives the item on every change, or a failure once the item is deleted.
+     */
+    public void addItemListener(String itemId, InventoryController.OnItemFetchListener listener) {
+        SharedDocument document = documents.get(itemId);
+        if (document == null) {
+            document = new SharedDocument();
+            documents.put(itemId, document);
+            final SharedDocument shared = document;
+            WriteJournal.getInstance();
+            document.registration = itemsRef.document(itemId).addSnapshotListener(executor, (snapshot, e) -> {
+                if (e != null || snapshot == null) {
+                    mainHandler.post(() -> shared.publish(null));
+                    return;
+                }
+                if (!snapshot.getMetadata().isFromCache()) {
+                    documentsRead.incrementAndGet();
+                } else if (!snapshot.exists()) {
+                    // Only the server can tell that the item was deleted; it may just not be cached
+                    return;
+                }
+                Item item = snapshot.exists() ? toItem(snapshot) : null;
+                mainHandler.post(() -> {
+                    shared.latest = item;
+                    shared.received = true;
+                    publishDocument(itemId, shared);
+                });
+            });
+            activeListeners.incrementAndGet();
+        }
+        if (!document.observers.contains(listener)) {
+            document.observers.add(listener);
+        }
+    }
+
+    /**
+     * Detaches a listener from a single item, removing the document listener once unused.
+     *
+     * @param itemId   The ID of the observed item.
+     * @param listener The listener to detach.
+     */
+    public void removeItemListener(String itemId, InventoryController.OnItemFetchListener listener) {
+        SharedDocument document = documents.get(itemId);
+        if (document != null && document.observers.remove(listener) && document.observers.isEmpty()) {
+            document.registration.remove();
+            document.removed = true;
+            documents.remove(itemId);
+            activeListeners.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the latest items received from Firestore, or null before the first snapshot.
+     */
+    public List<Item> getLatestItems() {
+        return latestItems;
+    }
+
+    /**
+     * Shows a bulk tag edit on the given items right away, before any write has committed.
+     * Observers receive one update. Must be called on the main thread.
+     *
+     * @param itemIds The IDs of the edited items.
+     * @param edit    The tag edit.
+     */
+    public void addPendingTagEdit(Collection<String> itemIds, TagEdit edit) {
+        for (String itemId : itemIds) {
+            List<TagEdit> edits = pendingTagEdits.get(itemId);
+            if (edits == null) {
+                edits = new ArrayList<>();
+                pendingTagEdits.put(itemId, edits);
+            }
+            edits.add(edit);
+        }
+        republish();
+    }
+
+    /**
+     * Stops showing a bulk tag edit once its job has finished. On success the snapshots already
+     * contain the edit; on failure the items fall back to what the server holds.
+     * Must be called on the main thread.
+     *
+     * @param itemIds The IDs of the edited items.
+     * @param edit    The tag edit passed to {@link #addPendingTagEdit}.
+     */
+    public void removePendingTagEdit(Collection<String> itemIds, TagEdit edit) {
+        for (String itemId : itemIds) {
+            List<TagEdit> edits = pendingTagEdits.get(itemId);
+            if (edits != null && edits.remove(edit) && edits.isEmpty()) {
+                pendingTagEdits.remove(itemId);
+            }
+        }
+        republish();
+    }
+
+    /**
+     * Shows an edit of one item right away, before its write has been confirmed.
+     * The change is not persisted; if the process dies first, the replayed write shows the edit.
+     * Must be called on the main thread.
+     *
+     * @param itemId      The ID of the edited item.
+     * @param replacement The item as edited, or null if the item is being deleted.
+     * @return The change, to be passed to {@link #removePendingChange} once the write settles.
+     */
+    public PendingChange addPendingChange(String itemId, Item replacement) {
+        PendingChange change = new PendingChange(itemId, replacement);
+        List<PendingChange> changes = pendingChanges.get(itemId);
+        if (changes == null) {
+            changes = new ArrayList<>();
+            pendingChanges.put(itemId, changes);
+        }
+        changes.add(change);
+        republish();
+        republishDocument(itemId);
+        return change;
+    }
+
+    /**
+     * Stops showing a single-item change. After a confirmed write the snapshots already hold
+     * the change; after a failed one the item rolls back to what the server holds.
+     * Must be called on the main thread.
+     *
+     * @param change The change returned by {@link #addPendingChange}.
+     */
+    public void removePendingChange(PendingChange change) {
+        List<PendingChange> changes = pendingChanges.get(change.itemId);
+        if (changes != null && changes.remove(change) && changes.isEmpty()) {
+            pendingChanges.remove(change.itemId);
+        }
+        republish();
+        republishDocument(change.itemId);
+    }
+
+    private void republish() {
+        if (latestItems != null) {
+            publish(latestItems, null);
+        }
+    }
+
+    private void republishDocument(String itemId) {
+        SharedDocument document = documents.get(itemId);
+        if (document != null && document.received) {
+            publishDocument(itemId, document);
+        }
+    }
+
+    private void publishDocument(String itemId, SharedDocument document) {
+        Item item = document.latest == null ? null : withPendingEdits(document.latest);
+        if (item != null) {
+            itemCache.put(item);
+        } else {
+            itemCache.remove(itemId);
+        }
+        document.publish(item);
+    }
+
+    private void publish(List<Item> items, TagCooccurrence counts) {
+        if (counts != null) {
+            tagCooccurrence = counts;
+        }
+        if (registration == null) {
+            // Snapshot delivered after the listener was removed
+            return;
+        }
+        latestItems = items;
+        List<Item> visibleItems = withPendingEdits(items);
+        itemCache.replaceAll(visibleItems);
+        for (InventoryController.OnInventoryUpdateListener observer : new ArrayList<>(observers)) {
+            observer.onInventoryDataChanged(visibleItems);
+        }
+    }
+
+    /**
+     * Applies the pending local changes and tag edits to a snapshot.
+     */
+    private List<Item> withPendingEdits(List<Item> items) {
+        if (pendingTagEdits.isEmpty() && pendingChanges.isEmpty()) {
+            return items;
+        }
+        List<Item> edited = new ArrayList<>(items.size());
+        for (Item item : items) {
+            item = withPendingEdits(item);
+            if (item != null) {
+                edited.add(item);
+            }
+        }
+        return Collections.unmodifiableList(edited);
+    }
+
+    /**
+     * Applies the pending local changes and tag edits to one item.
+     *
+     * @return The item as it should be shown, or null if it is being deleted.
+     */
+    private Item withPendingEdits(Item item) {
+        List<PendingChange> changes = pendingChanges.get(item.getItemId());
+        if (changes != null) {
+            // The latest change was made on top of the earlier ones
+            item = changes.get(changes.size() - 1).replacement;
+            if (item == null) {
+                return null;
+            }
+        }
+        List<TagEdit> edits = pendingTagEdits.get(item.getItemId());
+        if (edits != null) {
+            for (TagEdit edit : edits) {
+                item = edit.applyTo(item);
+            }
+        }
+        return item;
+    }
+
+    private void removeRegistration() {
+        if (registration != null && observers.isEmpty()) {
+            registration.remove();
+            registration = null;
+            // The cached items would go stale without a listener
+            latestItems = null;
+            activeListeners.decrementAndGet();
+        }
+    }
+
+    /**
+     * An edit or delete of one item that is shown before the server has confirmed it.
+     */
+    public static class PendingChange {
+        private final String itemId;
+        // Null when the item is being deleted
+        private final Item replacement;
+
+        PendingChange(String itemId, Item replacement) {
+            this.itemId = itemId;
+            this.replacement = replacement;
+        }
+    }
+
+    /**
+     * A document listener shared by the observers of one item.
+     */
+    private static class SharedDocument {
+        final List<InventoryController.OnItemFetchListener> observers = new ArrayList<>();
+        ListenerRegistration registration;
+        boolean removed;
+        // The item of the latest snapshot, null if the document does not exist
+        Item latest;
+        boolean received;
+
+        void publish(Item item) {
+            if (removed) {
+                return;
+            }
+            for (InventoryController.OnItemFetchListener observer : new ArrayList<>(observers)) {
+                if (item != null) {
+                    observer.onItemFetched(item);
+                } else {
+                    observer.onItemFetchFailed();
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a snapshot into an immutable list of items. Runs on the background executor.
+     */
+    private static List<Item> parseItems(QuerySnapshot queryDocumentSnapshots) {
+        if (!queryDocumentSnapshots.getMetadata().isFromCache()) {
+            documentsRead.addAndGet(queryDocumentSnapshots.getDocumentChanges().size());
+        }
+        // Every item is in the snapshot, so values no item has any more leave the pool
+        fieldPool.startGeneration();
+        List<Item> updatedData = new ArrayList<>();
+        for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
+            updatedData.add(toItem(doc));
+        }
+        return Collections.unmodifiableList(updatedData);
+    }
+
+    /**
+     * Builds an item from a document of the items collection.
+     *
+     * @param doc The item document.
+     * @return The item.
+     */
+    static Item toItem(DocumentSnapshot doc) {
+        // The document ID is authoritative; older documents may lack the itemId field
+        String itemId = doc.getId();
+        String itemName = doc.getString("itemName");
+        String description = doc.getString("description");
+        String purchaseDate = doc.getString("purchaseDate");
+        // Repeated across items, so one shared instance per value is kept
+        String make = fieldPool.intern(doc.getString("make"));
+        String model = fieldPool.intern(doc.getString("model"));
+        Double estimatedValue = doc.getDouble("estimatedValue");
+        String comments = doc.getString("comments");
+        String serialNumber = doc.getString("serialNumber");
+        List<String> tags = fieldPool.internAll((List<String>) doc.get("tags"));
+        return new Item(itemId, itemName, description, purchaseDate, make, model,
+                estimatedValue == null ? 0 : estimatedValue, comments, serialNumber, tags);
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.onestopshop;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable result of preparing the inventory for display: the filtered and sorted items
+ * together with their total estimated value.
+ */
+public final class InventoryView {
+    private final List<Item> items;
+    private final double totalEstimatedValue;
+
+    /**
+     * Creates a view over an already prepared list.
+     *
+     * @param items               The items in display order. The list must not be modified afterwards.
+     * @param totalEstimatedValue The sum of the estimated values of the items.
+     */
+    public InventoryView(List<Item> items, double totalEstimatedValue) {
+        this.items = Collections.unmodifiableList(items);
+        this.totalEstimatedValue = totalEstimatedValue;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+
+    public double getTotalEstimatedValue() {
+        return totalEstimatedValue;
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.onestopshop;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * In-memory cache of items keyed by item ID.
+ * It is filled from the live inventory snapshot and by single-item fetches, and
+ * coalesces concurrent fetches of the same item into one request.
+ */
+public class ItemCache {
+    private final Map<String, Item> items = new HashMap<>();
+    private final Map<String, CompletableFuture<Item>> inFlight = new HashMap<>();
+    // Bumped by every change from elsewhere, so a fetch that started earlier cannot overwrite it
+    private long generation;
+
+    /**
+     * Returns the cached copy of an item.
+     *
+     * @param itemId The ID of the item.
+     * @return The cached item, or null if it is not cached.
+     */
+    public synchronized Item get(String itemId) {
+        return items.get(itemId);
+    }
+
+    /**
+     * Caches an item under its ID. Items without an ID are ignored.
+     *
+     * @param item The item to cache.
+     */
+    public synchronized void put(Item item) {
+        generation++;
+        store(item);
+    }
+
+    private void store(Item item) {
+        if (item != null && item.getItemId() != null) {
+            items.put(item.getItemId(), item);
+        }
+    }
+
+    /**
+     * Replaces the cache contents with the items of a full inventory snapshot.
+     *
+     * @param snapshot Every item currently in the inventory.
+     */
+    public synchronized void replaceAll(List<Item> snapshot) {
+        generation++;
+        items.clear();
+        for (Item item : snapshot) {
+            store(item);
+        }
+    }
+
+    /**
+     * Removes an item from the cache.
+     *
+     * @param itemId The ID of the item.
+     */
+    public synchronized void remove(String itemId) {
+        generation++;
+        items.remove(itemId);
+    }
+
+    /**
+     * Fetches an item, sharing the request with any fetch of the same item that is still running.
+     * The fetched item is cached when the request succeeds, unless the cache was changed while
+     * it ran, since a snapshot delivered meanwhile is newer than the fetch. Every caller gets its own future,
+     * so a caller that cancels (e.g. because its screen closed) does not affect the others.
+     *
+     * @param itemId The ID of the item.
+     * @param loader Starts the actual request for an item ID.
+     * @return A future completed with the fetched item.
+     */
+    public CompletableFuture<Item> fetch(String itemId, Function<String, CompletableFuture<Item>> loader) {
+        CompletableFuture<Item> request;
+        long startGeneration;
+        synchronized (this) {
+            request = inFlight.get(itemId);
+            if (request != null) {
+                return forCaller(request);
+            }
+            request = new CompletableFuture<>();
+            inFlight.put(itemId, request);
+            startGeneration = generation;
+        }
+        final CompletableFuture<Item> shared = request;
+        CompletableFuture<Item> result = forCaller(shared);
+        CompletableFuture<Item> load;
+        try {
+            load = loader.apply(itemId);
+        } catch (RuntimeException e) {
+            load = new CompletableFuture<>();
+            load.completeExceptionally(e);
+        }
+        load.whenComplete((item, e) -> {
+            synchronized (this) {
+                inFlight.remove(itemId);
+                if (e == null && generation == startGeneration) {
+                    store(item);
+                }
+            }
+            if (e != null) {
+                shared.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            } else {
+                shared.complete(item);
+            }
+        });
+        return result;
+    }
+
+    private static CompletableFuture<Item> forCaller(CompletableFuture<Item> shared) {
+        CompletableFuture<Item> result = new CompletableFuture<>();
+        shared.whenComplete((item, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(item);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns the number of fetches currently running.
+     */
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+}
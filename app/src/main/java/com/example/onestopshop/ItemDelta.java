@@ -0,0 +1,148 @@
+package com.example.onestopshop;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The fields of an item that changed in an edit, keyed by their Firestore field names.
+ * Tag changes are kept as added and removed tags so that they can be sent as array
+ * transforms; when tags were both added and removed the whole list is sent instead,
+ * because a single update can apply only one transform to a field.
+ */
+public class ItemDelta {
+    private final Map<String, Object> changedFields;
+    private final List<String> addedTags;
+    private final List<String> removedTags;
+    // Every tag the edit added (+1) or removed (-1), however the change is sent
+    private final Map<String, Long> tagChanges;
+    // The whole new tag list when it is sent as a field, or null
+    private final List<String> replacedTags;
+
+    private ItemDelta(Map<String, Object> changedFields, List<String> addedTags, List<String> removedTags,
+                      Map<String, Long> tagChanges, List<String> replacedTags) {
+        this.changedFields = Collections.unmodifiableMap(changedFields);
+        this.replacedTags = replacedTags;
+        this.addedTags = Collections.unmodifiableList(addedTags);
+        this.removedTags = Collections.unmodifiableList(removedTags);
+        this.tagChanges = Collections.unmodifiableMap(tagChanges);
+    }
+
+    /**
+     * Computes the changes between the item as it was loaded and as it was edited.
+     * A missing text field and an empty one are considered equal.
+     *
+     * @param original The item as loaded.
+     * @param edited   The item as edited.
+     * @return The changes; {@link #isEmpty()} if nothing changed.
+     */
+    public static ItemDelta between(Item original, Item edited) {
+        Map<String, Object> changed = new LinkedHashMap<>();
+        putIfChanged(changed, "itemName", original.getItemName(), edited.getItemName());
+        putIfChanged(changed, "description", original.getDescription(), edited.getDescription());
+        putIfChanged(changed, "purchaseDate", original.getPurchaseDate(), edited.getPurchaseDate());
+        putIfChanged(changed, "make", original.getMake(), edited.getMake());
+        putIfChanged(changed, "model", original.getModel(), edited.getModel());
+        putIfChanged(changed, "serialNumber", original.getSerialNumber(), edited.getSerialNumber());
+        putIfChanged(changed, "comments", original.getComments(), edited.getComments());
+        if (Double.compare(original.getEstimatedValue(), edited.getEstimatedValue()) != 0) {
+            changed.put("estimatedValue", edited.getEstimatedValue());
+        }
+
+        List<String> originalTags = original.getTags() == null ? new ArrayList<>() : original.getTags();
+        List<String> editedTags = edited.getTags() == null ? new ArrayList<>() : edited.getTags();
+        Set<String> added = new LinkedHashSet<>(editedTags);
+        added.removeAll(originalTags);
+        Set<String> removed = new LinkedHashSet<>(originalTags);
+        removed.removeAll(editedTags);
+        Map<String, Long> tagChanges = new LinkedHashMap<>();
+        TagUsage.addChanges(tagChanges, originalTags, editedTags);
+        if (!added.isEmpty() && !removed.isEmpty()) {
+            List<String> replaced = new ArrayList<>(editedTags);
+            changed.put("tags", replaced);
+            return new ItemDelta(changed, new ArrayList<>(), new ArrayList<>(), tagChanges, replaced);
+        }
+        return new ItemDelta(changed, new ArrayList<>(added), new ArrayList<>(removed), tagChanges, null);
+    }
+
+    private static void putIfChanged(Map<String, Object> changed, String field, String before, String after) {
+        if (!Objects.equals(before == null ? "" : before, after == null ? "" : after)) {
+            changed.put(field, after);
+        }
+    }
+
+    /**
+     * Applies the changes to an item, e.g. to show an edit before it is saved.
+     *
+     * @param item The item the changes are applied to.
+     * @return A new item with the changes applied.
+     */
+    public Item applyTo(Item item) {
+        List<String> tags;
+        if (replacedTags != null) {
+            tags = new ArrayList<>(replacedTags);
+        } else {
+            Set<String> merged = new LinkedHashSet<>(item.getTags() == null ? new ArrayList<>() : item.getTags());
+            merged.removeAll(removedTags);
+            merged.addAll(addedTags);
+            tags = new ArrayList<>(merged);
+        }
+        return new Item(item.getItemId(),
+                stringField("itemName", item.getItemName()),
+                stringField("description", item.getDescription()),
+                stringField("purchaseDate", item.getPurchaseDate()),
+                stringField("make", item.getMake()),
+                stringField("model", item.getModel()),
+                changedFields.containsKey("estimatedValue")
+                        ? (Double) changedFields.get("estimatedValue") : item.getEstimatedValue(),
+                stringField("comments", item.getComments()),
+                stringField("serialNumber", item.getSerialNumber()),
+                tags);
+    }
+
+    private String stringField(String field, String current) {
+        return changedFields.containsKey(field) ? (String) changedFields.get(field) : current;
+    }
+
+    /**
+     * Returns the fields to overwrite, including "tags" when the whole list has to be sent.
+     */
+    public Map<String, Object> getChangedFields() {
+        return changedFields;
+    }
+
+    /**
+     * Returns the tags to add with an array union.
+     */
+    public List<String> getAddedTags() {
+        return addedTags;
+    }
+
+    /**
+     * Returns the tags to remove with an array remove.
+     */
+    public List<String> getRemovedTags() {
+        return removedTags;
+    }
+
+    /**
+     * Returns every tag the edit added or removed, also when the whole list is sent.
+     *
+     * @return +1 for each added tag and -1 for each removed one, keyed by tag.
+     */
+    public Map<String, Long> getTagChanges() {
+        return tagChanges;
+    }
+
+    /**
+     * Returns true if the edit changed nothing, so that no write is needed.
+     */
+    public boolean isEmpty() {
+        return changedFields.isEmpty() && addedTags.isEmpty() && removedTags.isEmpty();
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.onestopshop;
+
+import android.content.Context;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the inventory to a CSV or JSON file in the format read by {@link ItemImporter}.
+ * The collection is read one page at a time with a document ID cursor and each page is
+ * written straight to the output, so memory use does not grow with the inventory size.
+ * Pages are read from the server, so an export made offline fails instead of writing only
+ * the cached items, and a failed export deletes its partly written file.
+ */
+public class ItemExporter {
+    private static final String TAG = "ItemExporter";
+    private static final int PAGE_SIZE = 200;
+    private static final long PAGE_TIMEOUT_SECONDS = 30;
+    /**
+     * The extra column holding an item's photo URLs, joined like tags.
+     */
+    public static final String PHOTO_URLS_COLUMN = "photoUrls";
+
+    /**
+     * The supported file formats.
+     */
+    public enum Format {
+        CSV,
+        JSON
+    }
+
+    private final Context context;
+    private final CollectionReference itemsRef;
+
+    public ItemExporter(Context context) {
+        this.context = context.getApplicationContext();
+        itemsRef = InventoryRepository.getInstance().getItemsRef();
+    }
+
+    /**
+     * Exports every item on a background thread.
+     *
+     * @param destination   The file to write.
+     * @param format        The file format.
+     * @param gzip          Whether to gzip-compress the output.
+     * @param includePhotos Whether to add the URLs of each item's photos. This costs one extra
+     *                      query per item.
+     * @param listener      Notified on the main thread after every page, or null.
+     * @return A future completed with the number of exported items. On failure the
+     * destination file is deleted.
+     */
+    public CompletableFuture<Integer> exportItems(Uri destination, Format format, boolean gzip,
+                                                  boolean includePhotos, OnExportProgressListener listener) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return run(destination, format, gzip, includePhotos, listener);
+            } catch (IOException | RuntimeException e) {
+                deleteDestination(destination);
+                throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+            }
+        }, AppExecutors.io());
+    }
+
+    /**
+     * Deletes a partly written export so that it cannot be mistaken for a complete one.
+     */
+    private void deleteDestination(Uri destination) {
+        try {
+            if (!DocumentsContract.deleteDocument(context.getContentResolver(), destination)) {
+                Log.d(TAG, "Could not delete the incomplete export " + destination);
+            }
+        } catch (IOException | RuntimeException e) {
+            // Not a document provider URI, or the provider does not support deletes
+            Log.d(TAG, "Could not delete the incomplete export " + destination, e);
+        }
+    }
+
+    private int run(Uri destination, Format format, boolean gzip, boolean includePhotos,
+                    OnExportProgressListener listener) throws IOException {
+        OutputStream output = context.getContentResolver().openOutputStream(destination);
+        if (output == null) {
+            throw new IOException("Cannot open " + destination);
+        }
+        if (gzip) {
+            output = new GZIPOutputStream(output);
+        }
+        int exported = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8))) {
+            RowWriter rows = format == Format.JSON ? new JsonRowWriter(writer) : new CsvRowWriter(writer);
+            rows.begin(includePhotos);
+            DocumentSnapshot cursor = null;
+            while (true) {
+                Query query = itemsRef.orderBy(FieldPath.documentId()).limit(PAGE_SIZE);
+                if (cursor != null) {
+                    query = query.startAfter(cursor);
+                }
+                List<DocumentSnapshot> page = await(query.get(Source.SERVER)).getDocuments();
+                if (page.isEmpty()) {
+                    break;
+                }
+                List<List<String>> photoUrls = includePhotos ? fetchPhotoUrls(page) : null;
+                for (int i = 0; i < page.size(); i++) {
+                    rows.write(InventoryRepository.toItem(page.get(i)), photoUrls == null ? null : photoUrls.get(i));
+                }
+                exported += page.size();
+                if (listener != null) {
+                    int exportedNow = exported;
+                    AppExecutors.mainThread().execute(() -> listener.onProgress(exportedNow));
+                }
+                if (page.size() < PAGE_SIZE) {
+                    break;
+                }
+                cursor = page.get(page.size() - 1);
+            }
+            rows.end();
+        }
+        Log.d(TAG, "Exported " + exported + " items");
+        return exported;
+    }
+
+    /**
+     * Fetches the photo URLs of every item on a page, querying the items in parallel.
+     */
+    private List<List<String>> fetchPhotoUrls(List<DocumentSnapshot> page) throws IOException {
+        List<Task<QuerySnapshot>> tasks = new ArrayList<>();
+        for (DocumentSnapshot doc : page) {
+            tasks.add(doc.getReference().collection("photos").get(Source.SERVER));
+        }
+        await(Tasks.whenAll(tasks));
+        List<List<String>> photoUrls = new ArrayList<>();
+        for (Task<QuerySnapshot> task : tasks) {
+            List<String> urls = new ArrayList<>();
+            for (DocumentSnapshot photo : task.getResult().getDocuments()) {
+                String url = photo.getString("photoUrl");
+                if (url != null) {
+                    urls.add(url);
+                }
+            }
+            photoUrls.add(urls);
+        }
+        return photoUrls;
+    }
+
+    private static <T> T await(Task<T> task) throws IOException {
+        try {
+            return Tasks.await(task, PAGE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IOException("Failed to read the inventory", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        }
+    }
+
+    /**
+     * Writes items in one of the file formats.
+     */
+    private interface RowWriter {
+        void begin(boolean includePhotos) throws IOException;
+
+        void write(Item item, List<String> photoUrls) throws IOException;
+
+        void end() throws IOException;
+    }
+
+    private static class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvRowWriter(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void begin(boolean includePhotos) throws IOException {
+            List<String> header = new ArrayList<>(ItemRecords.COLUMNS);
+            if (includePhotos) {
+                header.add(PHOTO_URLS_COLUMN);
+            }
+            writer.write(CsvReader.formatRecord(header));
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void write(Item item, List<String> photoUrls) throws IOException {
+            List<String> record = new ArrayList<>(ItemRecords.toRecord(item));
+            if (photoUrls != null) {
+                record.add(String.join(ItemRecords.TAG_SEPARATOR, photoUrls));
+            }
+            writer.write(CsvReader.formatRecord(record));
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void end() {
+        }
+    }
+
+    private static class JsonRowWriter implements RowWriter {
+        private final JsonWriter writer;
+
+        JsonRowWriter(Writer writer) {
+            this.writer = new JsonWriter(writer);
+        }
+
+        @Override
+        public void begin(boolean includePhotos) throws IOException {
+            writer.beginArray();
+        }
+
+        @Override
+        public void write(Item item, List<String> photoUrls) throws IOException {
+            writer.beginObject();
+            writer.name("itemName").value(item.getItemName());
+            writer.name("description").value(item.getDescription());
+            writer.name("purchaseDate").value(item.getPurchaseDate());
+            writer.name("make").value(item.getMake());
+            writer.name("model").value(item.getModel());
+            writer.name("estimatedValue").value(item.getEstimatedValue());
+            writer.name("serialNumber").value(item.getSerialNumber());
+            writer.name("comments").value(item.getComments());
+            writeArray("tags", item.getTags());
+            if (photoUrls != null) {
+                writeArray(PHOTO_URLS_COLUMN, photoUrls);
+            }
+            writer.endObject();
+        }
+
+        private void writeArray(String name, List<String> values) throws IOException {
+            writer.name(name).beginArray();
+            if (values != null) {
+                for (String value : values) {
+                    writer.value(value);
+                }
+            }
+            writer.endArray();
+        }
+
+        @Override
+        public void end() throws IOException {
+            writer.endArray();
+            writer.flush();
+        }
+    }
+
+    /**
+     * Interface for following the progress of an export.
+     */
+    public interface OnExportProgressListener {
+        /**
+         * @param exported The number of items written so far.
+         */
+        void onProgress(int exported);
+    }
+}
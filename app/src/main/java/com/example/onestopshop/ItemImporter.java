@@ -0,0 +1,433 @@
+package com.example.onestopshop;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.Log;
+
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Imports items from a CSV file (with a header row of {@link ItemRecords#COLUMNS}) or a JSON
+ * array of objects with the same keys, optionally gzip-compressed. The file is streamed row by row; valid rows are
+ * written in batches with a bounded number of commits in flight, and invalid rows are
+ * skipped. Each row gets a document ID derived from the import and its row number, so a
+ * resumed import rewrites rather than duplicates rows whose commit was not checkpointed.
+ */
+public class ItemImporter {
+    private static final String TAG = "ItemImporter";
+    private static final String PREFS_NAME = "import_checkpoints";
+    private static final int MAX_COMMITS_IN_FLIGHT = 4;
+    // A commit only completes once the server confirms it, so an import started offline
+    // fails after this long instead of waiting for the network
+    private static final long COMMIT_TIMEOUT_SECONDS = 60;
+
+    private final Context context;
+    private final CollectionReference itemsRef;
+    private final SharedPreferences checkpoints;
+    private final TagRegistry tagRegistry;
+
+    public ItemImporter(Context context) {
+        this.context = context.getApplicationContext();
+        itemsRef = InventoryRepository.getInstance().getItemsRef();
+        checkpoints = this.context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        tagRegistry = TagRegistry.getInstance();
+    }
+
+    /**
+     * Returns true if an earlier import of the file stopped before finishing; importing it
+     * again resumes after the last committed row.
+     *
+     * @param uri The file.
+     */
+    public boolean hasCheckpoint(Uri uri) {
+        return checkpoints.contains(uri.toString());
+    }
+
+    /**
+     * Imports a file on a background thread.
+     *
+     * @param uri      The CSV or JSON file.
+     * @param listener Notified on the main thread after every committed batch, or null.
+     * @return A future completed with the number of imported items. On failure the checkpoint
+     * is kept so that the import can be resumed.
+     */
+    public CompletableFuture<Integer> importItems(Uri uri, OnImportProgressListener listener) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return run(uri, listener);
+            } catch (IOException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }, AppExecutors.io());
+    }
+
+    private int run(Uri uri, OnImportProgressListener listener) throws IOException, InterruptedException {
+        Checkpoint checkpoint = loadCheckpoint(uri);
+        Progress progress = new Progress(checkpoint, listener);
+        Semaphore permits = new Semaphore(MAX_COMMITS_IN_FLIGHT);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        List<Item> chunk = new ArrayList<>();
+        int row = 0;
+        InputStream input = context.getContentResolver().openInputStream(uri);
+        if (input == null) {
+            throw new IOException("Cannot open " + uri);
+        }
+        try (RecordSource source = openSource(input)) {
+            Map<String, Object> record;
+            while (failure.get() == null && (record = source.next()) != null) {
+                row++;
+                if (row <= checkpoint.rows) {
+                    // Committed by an earlier run
+                    continue;
+                }
+                Item item = toValidItem(record, row);
+                if (item == null) {
+                    progress.rejected++;
+                } else {
+                    String itemId = checkpoint.importId + "-" + row;
+                    chunk.add(new Item(itemId, item.getItemName(), item.getDescription(), item.getPurchaseDate(),
+                            item.getMake(), item.getModel(), item.getEstimatedValue(), item.getComments(),
+                            item.getSerialNumber(), item.getTags()));
+                }
+                if (chunk.size() == BatchWriter.MAX_BATCH_SIZE) {
+                    commit(chunk, row, permits, failure, progress, uri);
+                    chunk = new ArrayList<>();
+                }
+            }
+            if (failure.get() == null) {
+                commit(chunk, row, permits, failure, progress, uri);
+            }
+        }
+        // Wait for the commits still in flight
+        permits.acquire(MAX_COMMITS_IN_FLIGHT);
+        if (failure.get() != null) {
+            throw new IOException("Import stopped at a failed commit", failure.get());
+        }
+        checkpoints.edit().remove(uri.toString()).apply();
+        Log.d(TAG, "Imported " + progress.imported + " items, rejected " + progress.rejected
+                + " rows at " + progress.rowsPerSecond() + " rows/s");
+        return progress.imported;
+    }
+
+    /**
+     * Commits a chunk once fewer than {@link #MAX_COMMITS_IN_FLIGHT} commits are running.
+     * A commit that is not confirmed within {@link #COMMIT_TIMEOUT_SECONDS} fails the import;
+     * its rows are not checkpointed, so resuming writes them again under the same IDs.
+     *
+     * @param lastRow The last row the chunk covers, including rejected rows.
+     */
+    private void commit(List<Item> chunk, int lastRow, Semaphore permits, AtomicReference<Exception> failure,
+                        Progress progress, Uri uri) throws InterruptedException {
+        permits.acquire();
+        int sequence = progress.nextSequence++;
+        WriteBatch batch = FirebaseFirestore.getInstance().batch();
+        Map<String, Long> tagChanges = new HashMap<>();
+        for (Item item : chunk) {
+            Map<String, Object> itemData = InventoryController.toItemData(item);
+            itemData.put("itemId", item.getItemId());
+            batch.set(itemsRef.document(item.getItemId()), itemData);
+            TagUsage.addChanges(tagChanges, Collections.emptyList(), item.getTags());
+        }
+        int size = chunk.size();
+        CompletableFuture<Void> write = WriteScheduler.getInstance().submit(WriteScheduler.ITEMS, Math.max(1, size),
+                () -> TaskFutures.toFuture(batch.commit()));
+        TaskFutures.withTimeout(write, COMMIT_TIMEOUT_SECONDS, TimeUnit.SECONDS).whenComplete((aVoid, e) -> {
+            if (e != null) {
+                failure.compareAndSet(null, new Exception(TaskFutures.unwrap(e)));
+            } else {
+                progress.onCommitted(sequence, lastRow, size);
+                saveCheckpoint(uri, progress.checkpoint);
+                tagRegistry.recordChanges(tagChanges);
+            }
+            permits.release();
+        });
+    }
+
+    private Item toValidItem(Map<String, Object> record, int row) {
+        Item item;
+        try {
+            item = ItemRecords.fromRecord(record);
+        } catch (IllegalArgumentException e) {
+            Log.d(TAG, "Row " + row + ": " + e.getMessage());
+            return null;
+        }
+        String error = ItemValidator.validate(item);
+        if (error != null) {
+            Log.d(TAG, "Row " + row + ": " + error);
+            return null;
+        }
+        return item;
+    }
+
+    /**
+     * Picks the parser from the content: gzip-compressed files (as written by
+     * {@link ItemExporter}) are decompressed, a UTF-8 byte order mark is skipped, and a leading
+     * '[' means JSON.
+     */
+    private static RecordSource openSource(InputStream input) throws IOException {
+        InputStream buffered = new BufferedInputStream(input);
+        buffered.mark(2);
+        int first = buffered.read();
+        int second = buffered.read();
+        buffered.reset();
+        if (first == 0x1f && second == 0x8b) {
+            buffered = new GZIPInputStream(buffered);
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(buffered, StandardCharsets.UTF_8));
+        // Skip the byte order mark that e.g. Excel writes, which would otherwise be part of the first column name
+        reader.mark(1);
+        if (reader.read() != '\uFEFF') {
+            reader.reset();
+        }
+        reader.mark(1024);
+        int c;
+        do {
+            c = reader.read();
+        } while (c != -1 && Character.isWhitespace(c));
+        reader.reset();
+        return c == '[' ? new JsonSource(new JsonReader(reader)) : new CsvSource(new CsvReader(reader));
+    }
+
+    private synchronized Checkpoint loadCheckpoint(Uri uri) {
+        String stored = checkpoints.getString(uri.toString(), null);
+        if (stored != null) {
+            try {
+                JSONObject json = new JSONObject(stored);
+                return new Checkpoint(json.getString("importId"), json.getInt("rows"));
+            } catch (JSONException e) {
+                Log.d(TAG, "Ignoring an unreadable checkpoint", e);
+            }
+        }
+        return new Checkpoint(UUID.randomUUID().toString().substring(0, 8), 0);
+    }
+
+    private synchronized void saveCheckpoint(Uri uri, Checkpoint checkpoint) {
+        try {
+            JSONObject json = new JSONObject();
+            json.put("importId", checkpoint.importId);
+            json.put("rows", checkpoint.rows);
+            checkpoints.edit().putString(uri.toString(), json.toString()).apply();
+        } catch (JSONException e) {
+            Log.d(TAG, "Failed to save the checkpoint", e);
+        }
+    }
+
+    /**
+     * The import a file belongs to and how many of its rows are known to be committed.
+     */
+    private static class Checkpoint {
+        final String importId;
+        volatile int rows;
+
+        Checkpoint(String importId, int rows) {
+            this.importId = importId;
+            this.rows = rows;
+        }
+    }
+
+    /**
+     * Counts rows and advances the checkpoint as batches commit, possibly out of order.
+     */
+    private static class Progress {
+        final Checkpoint checkpoint;
+        final OnImportProgressListener listener;
+        final long startedAt = SystemClock.elapsedRealtime();
+        final int startRow;
+        // Last row of every committed batch that is not yet part of the checkpoint
+        final TreeMap<Integer, Integer> committedAhead = new TreeMap<>();
+        int nextSequence;
+        int nextToCheckpoint;
+        volatile int imported;
+        volatile int rejected;
+
+        Progress(Checkpoint checkpoint, OnImportProgressListener listener) {
+            this.checkpoint = checkpoint;
+            this.listener = listener;
+            startRow = checkpoint.rows;
+        }
+
+        synchronized void onCommitted(int sequence, int lastRow, int size) {
+            imported += size;
+            committedAhead.put(sequence, lastRow);
+            while (committedAhead.containsKey(nextToCheckpoint)) {
+                checkpoint.rows = committedAhead.remove(nextToCheckpoint);
+                nextToCheckpoint++;
+            }
+            if (listener != null) {
+                int importedNow = imported;
+                int rejectedNow = rejected;
+                double rate = rowsPerSecond();
+                AppExecutors.mainThread().execute(() -> listener.onProgress(importedNow, rejectedNow, rate));
+            }
+        }
+
+        double rowsPerSecond() {
+            long elapsed = Math.max(1, SystemClock.elapsedRealtime() - startedAt);
+            return (checkpoint.rows - startRow) * 1000.0 / elapsed;
+        }
+    }
+
+    /**
+     * A stream of records keyed by column name. Values are strings, or lists of strings for
+     * tags given as a JSON array.
+     */
+    private interface RecordSource extends Closeable {
+        Map<String, Object> next() throws IOException;
+    }
+
+    private static class CsvSource implements RecordSource {
+        private final CsvReader reader;
+        private List<String> header;
+
+        CsvSource(CsvReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Map<String, Object> next() throws IOException {
+            if (header == null) {
+                header = reader.readRecord();
+                if (header == null) {
+                    return null;
+                }
+            }
+            List<String> fields;
+            do {
+                fields = reader.readRecord();
+                // Skip blank lines
+            } while (fields != null && fields.size() == 1 && fields.get(0).isEmpty());
+            if (fields == null) {
+                return null;
+            }
+            Map<String, Object> record = new LinkedHashMap<>();
+            for (int i = 0; i < header.size() && i < fields.size(); i++) {
+                record.put(header.get(i).trim(), fields.get(i));
+            }
+            return record;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    private static class JsonSource implements RecordSource {
+        private final JsonReader reader;
+        private boolean started;
+
+        JsonSource(JsonReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Map<String, Object> next() throws IOException {
+            if (!started) {
+                reader.beginArray();
+                started = true;
+            }
+            if (!reader.hasNext()) {
+                return null;
+            }
+            Map<String, Object> record = new LinkedHashMap<>();
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                // Not an item; the empty record is rejected as invalid
+                reader.skipValue();
+                return record;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    // Tags may be given as an array, which is kept as a list so that a tag
+                    // containing the CSV separator stays one tag
+                    List<String> values = new ArrayList<>();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        String value = nextScalar();
+                        if (value != null) {
+                            values.add(value);
+                        }
+                    }
+                    reader.endArray();
+                    record.put(name, values);
+                } else {
+                    String value = nextScalar();
+                    if (value != null) {
+                        record.put(name, value);
+                    }
+                }
+            }
+            reader.endObject();
+            return record;
+        }
+
+        /**
+         * Reads a string, number or boolean as text; null and nested values are skipped.
+         *
+         * @return The value as text, or null if it was skipped.
+         */
+        private String nextScalar() throws IOException {
+            switch (reader.peek()) {
+                case STRING:
+                case NUMBER:
+                    return reader.nextString();
+                case BOOLEAN:
+                    return String.valueOf(reader.nextBoolean());
+                case NULL:
+                    reader.nextNull();
+                    return null;
+                default:
+                    reader.skipValue();
+                    return null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Interface for following the progress of an import.
+     */
+    public interface OnImportProgressListener {
+        /**
+         * @param imported      The number of items committed so far.
+         * @param rejected      The number of rows skipped as invalid so far.
+         * @param rowsPerSecond The average number of rows committed per second.
+         */
+        void onProgress(int imported, int rejected, double rowsPerSecond);
+    }
+}
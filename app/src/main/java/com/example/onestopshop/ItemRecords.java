@@ -0,0 +1,90 @@
+package com.example.onestopshop;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps items to and from flat records keyed by column name, the shape used for
+ * CSV and JSON import and export. Tags are joined with semicolons in CSV; JSON may
+ * give them as a list instead.
+ */
+public final class ItemRecords {
+    /**
+     * The columns of an item record, in export order.
+     */
+    public static final List<String> COLUMNS = Collections.unmodifiableList(Arrays.asList(
+            "itemName", "description", "purchaseDate", "make", "model", "estimatedValue",
+            "serialNumber", "comments", "tags"));
+    public static final String TAG_SEPARATOR = ";";
+
+    private ItemRecords() {
+    }
+
+    /**
+     * Builds an item from a record. Missing columns are left empty.
+     *
+     * @param record Values keyed by column name. The tags are a joined string or a list of tags.
+     * @return The item, without an ID.
+     * @throws IllegalArgumentException If the estimated value is not a number.
+     */
+    public static Item fromRecord(Map<String, ?> record) {
+        String value = valueOf(record, "estimatedValue");
+        double estimatedValue;
+        try {
+            estimatedValue = value.isEmpty() ? 0 : Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid Estimated Value", e);
+        }
+        return new Item(valueOf(record, "itemName"), valueOf(record, "description"),
+                valueOf(record, "purchaseDate"), valueOf(record, "make"), valueOf(record, "model"),
+                estimatedValue, valueOf(record, "comments"), valueOf(record, "serialNumber"),
+                tagsOf(record.get("tags")));
+    }
+
+    private static List<String> tagsOf(Object value) {
+        if (!(value instanceof List)) {
+            return splitTags(value == null ? "" : value.toString());
+        }
+        List<String> tags = new ArrayList<>();
+        for (Object tag : (List<?>) value) {
+            if (tag != null && !tag.toString().trim().isEmpty()) {
+                tags.add(tag.toString().trim());
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Returns the values of an item in {@link #COLUMNS} order.
+     *
+     * @param item The item.
+     * @return The record values.
+     */
+    public static List<String> toRecord(Item item) {
+        List<String> tags = item.getTags() == null ? new ArrayList<>() : item.getTags();
+        return Arrays.asList(item.getItemName(), item.getDescription(), item.getPurchaseDate(), item.getMake(),
+                item.getModel(), String.valueOf(item.getEstimatedValue()), item.getSerialNumber(),
+                item.getComments(), String.join(TAG_SEPARATOR, tags));
+    }
+
+    /**
+     * Splits a joined tag column into tags, dropping empty entries.
+     */
+    public static List<String> splitTags(String joined) {
+        List<String> tags = new ArrayList<>();
+        for (String tag : joined.split(TAG_SEPARATOR)) {
+            if (!tag.trim().isEmpty()) {
+                tags.add(tag.trim());
+            }
+        }
+        return tags;
+    }
+
+    private static String valueOf(Map<String, ?> record, String column) {
+        Object value = record.get(column);
+        return value == null ? "" : value.toString().trim();
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.onestopshop;
+
+/**
+ * The rules an item must satisfy before it is stored, shared by the add and edit screens
+ * and the importer.
+ */
+public final class ItemValidator {
+    private ItemValidator() {
+    }
+
+    /**
+     * Validates an item.
+     *
+     * @param item The item to validate.
+     * @return A message describing the first rule the item breaks, or null if it is valid.
+     */
+    public static String validate(Item item) {
+        if (isEmpty(item.getItemName())) {
+            return "Invalid Product Name";
+        } else if (isEmpty(item.getDescription())) {
+            return "Invalid Description";
+        } else if (isEmpty(item.getPurchaseDate())) {
+            return "Invalid Purchase Date";
+        } else if (isEmpty(item.getMake())) {
+            return "Invalid Make";
+        } else if (isEmpty(item.getModel())) {
+            return "Invalid Model";
+        } else if (item.getEstimatedValue() < 0) {
+            return "Value must be greater than 0";
+        } else if (item.getTags() == null || item.getTags().isEmpty()) {
+            return "Must have at least one tag";
+        }
+        return null;
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+}
@@ -6,36 +6,85 @@ import android.text.TextUtils;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * This is a dialog for adding tags to multiple items
+ * This is a dialog for adding tags to and removing tags from multiple items
  */
 public class MultipleTagsDialog extends Dialog {
     EditText tagInputEditText;
     Button createButton;
+    Button removeButton;
     TagsController tagsController;
     public MultipleTagsDialog(@NonNull Context context, ArrayList<String> selectedItemIds) {
         super(context);
         setContentView(R.layout.dialog_multipletags);
         tagInputEditText = findViewById(R.id.editTextTagInput);
         createButton = findViewById(R.id.buttonCreate);
+        removeButton = findViewById(R.id.buttonRemove);
         tagsController = new TagsController();
         createButton.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                if(tagInputEditText.getText() != null && !TextUtils.isEmpty(tagInputEditText.getText().toString())){
-                    //upload tags for all items
-                    for(String id : selectedItemIds) {
-                        tagsController.uploadTag(id, tagInputEditText.getText().toString());
-                    }
-                    dismiss();
+                List<String> tags = readTags();
+                if (!tags.isEmpty()) {
+                    //add tags to all items
+                    applyEdit(context, selectedItemIds, new TagEdit(tags, Collections.emptyList()));
+                }
+            }
+        });
+        removeButton.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View v) {
+                List<String> tags = readTags();
+                if (!tags.isEmpty()) {
+                    //remove tags from all items
+                    applyEdit(context, selectedItemIds, new TagEdit(Collections.emptyList(), tags));
                 }
-
             }
         });
     }
+
+    /**
+     * Reads the comma separated tags typed by the user.
+     */
+    private List<String> readTags() {
+        List<String> tags = new ArrayList<>();
+        if (tagInputEditText.getText() == null) {
+            return tags;
+        }
+        for (String tag : tagInputEditText.getText().toString().split(",")) {
+            if (!TextUtils.isEmpty(tag.trim())) {
+                tags.add(tag.trim());
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Starts the bulk edit and closes the dialog. The inventory shows the edit right away;
+     * the user is told once every batch has been committed.
+     */
+    private void applyEdit(Context context, List<String> itemIds, TagEdit edit) {
+        tagsController.applyTagEdit(itemIds, edit, null).whenCompleteAsync((count, e) -> {
+            String message;
+            Throwable cause = e == null ? null : TaskFutures.unwrap(e);
+            if (cause == null) {
+                message = "Updated tags of " + count + " items";
+            } else if (cause instanceof BatchWriter.PartialWriteException) {
+                BatchWriter.PartialWriteException partial = (BatchWriter.PartialWriteException) cause;
+                message = "Updated tags of " + partial.getWritten() + " items, " + partial.getFailed() + " failed";
+            } else {
+                message = "Failed to update tags";
+            }
+            Toast.makeText(context.getApplicationContext(), message, Toast.LENGTH_SHORT).show();
+        }, AppExecutors.mainThread());
+        dismiss();
+    }
 }
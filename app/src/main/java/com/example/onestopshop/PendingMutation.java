@@ -0,0 +1,202 @@
+package com.example.onestopshop;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A write to one Firestore document that is waiting in the {@link WriteJournal}.
+ * Field values are plain values (strings, numbers, booleans, lists, maps and null) so that
+ * the mutation can be persisted; array transforms are kept apart from the plain fields.
+ * Every mutation is idempotent, so replaying one that was already applied is safe.
+ * Successive mutations of the same document can be coalesced into one.
+ */
+public class PendingMutation {
+    public enum Type { SET, UPDATE, DELETE }
+
+    private final String path;
+    private final Type type;
+    private final Map<String, Object> fields;
+    private final Map<String, List<Object>> arrayUnions;
+    private final Map<String, List<Object>> arrayRemoves;
+
+    PendingMutation(String path, Type type, Map<String, Object> fields,
+                    Map<String, List<Object>> arrayUnions, Map<String, List<Object>> arrayRemoves) {
+        this.path = path;
+        this.type = type;
+        this.fields = Collections.unmodifiableMap(new LinkedHashMap<>(fields));
+        this.arrayUnions = Collections.unmodifiableMap(new LinkedHashMap<>(arrayUnions));
+        this.arrayRemoves = Collections.unmodifiableMap(new LinkedHashMap<>(arrayRemoves));
+    }
+
+    /**
+     * Creates a mutation that overwrites the whole document.
+     *
+     * @param path   The document path, e.g. users/{uid}/items/{itemId}.
+     * @param fields The document contents.
+     * @return The mutation.
+     */
+    public static PendingMutation set(String path, Map<String, Object> fields) {
+        return new PendingMutation(path, Type.SET, fields, new LinkedHashMap<>(), new LinkedHashMap<>());
+    }
+
+    /**
+     * Creates a mutation that overwrites some fields of an existing document.
+     *
+     * @param path   The document path.
+     * @param fields The fields to overwrite.
+     * @return The mutation.
+     */
+    public static PendingMutation update(String path, Map<String, Object> fields) {
+        return new PendingMutation(path, Type.UPDATE, fields, new LinkedHashMap<>(), new LinkedHashMap<>());
+    }
+
+    /**
+     * Creates a mutation that deletes the document.
+     *
+     * @param path The document path.
+     * @return The mutation.
+     */
+    public static PendingMutation delete(String path) {
+        return new PendingMutation(path, Type.DELETE, new LinkedHashMap<>(), new LinkedHashMap<>(), new LinkedHashMap<>());
+    }
+
+    /**
+     * Returns a copy of this update that also adds values to an array field.
+     *
+     * @param field  The array field.
+     * @param values The values to add if missing.
+     * @return The extended mutation.
+     */
+    public PendingMutation withArrayUnion(String field, List<?> values) {
+        Map<String, List<Object>> unions = new LinkedHashMap<>(arrayUnions);
+        unions.put(field, new ArrayList<>(values));
+        return new PendingMutation(path, type, fields, unions, arrayRemoves);
+    }
+
+    /**
+     * Returns a copy of this update that also removes values from an array field.
+     *
+     * @param field  The array field.
+     * @param values The values to remove.
+     * @return The extended mutation.
+     */
+    public PendingMutation withArrayRemove(String field, List<?> values) {
+        Map<String, List<Object>> removes = new LinkedHashMap<>(arrayRemoves);
+        removes.put(field, new ArrayList<>(values));
+        return new PendingMutation(path, type, fields, arrayUnions, removes);
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Map<String, Object> getFields() {
+        return fields;
+    }
+
+    public Map<String, List<Object>> getArrayUnions() {
+        return arrayUnions;
+    }
+
+    public Map<String, List<Object>> getArrayRemoves() {
+        return arrayRemoves;
+    }
+
+    /**
+     * Merges a later mutation of the same document into this one, so that applying the result
+     * leaves the document as applying both in order would.
+     *
+     * @param next The mutation that follows this one.
+     * @return The merged mutation, or null if the two cannot be expressed as one write
+     * (an array union and an array remove of the same field with no known base value).
+     */
+    public PendingMutation coalesce(PendingMutation next) {
+        if (!path.equals(next.path)) {
+            return null;
+        }
+        if (next.type != Type.UPDATE) {
+            // A set or delete replaces whatever came before
+            return next;
+        }
+        if (type == Type.DELETE) {
+            // An update of a deleted document would fail anyway
+            return this;
+        }
+        if (type == Type.SET) {
+            for (String field : next.fields.keySet()) {
+                if (field.contains(".")) {
+                    // A nested field path cannot be folded into the document's map values
+                    return null;
+                }
+            }
+        }
+        Map<String, Object> mergedFields = new LinkedHashMap<>(fields);
+        Map<String, List<Object>> mergedUnions = new LinkedHashMap<>(arrayUnions);
+        Map<String, List<Object>> mergedRemoves = new LinkedHashMap<>(arrayRemoves);
+        for (Map.Entry<String, Object> entry : next.fields.entrySet()) {
+            mergedFields.put(entry.getKey(), entry.getValue());
+            mergedUnions.remove(entry.getKey());
+            mergedRemoves.remove(entry.getKey());
+        }
+        for (Map.Entry<String, List<Object>> entry : next.arrayUnions.entrySet()) {
+            if (!mergeArrayOp(entry.getKey(), entry.getValue(), true, mergedFields, mergedUnions, mergedRemoves)) {
+                return null;
+            }
+        }
+        for (Map.Entry<String, List<Object>> entry : next.arrayRemoves.entrySet()) {
+            if (!mergeArrayOp(entry.getKey(), entry.getValue(), false, mergedFields, mergedUnions, mergedRemoves)) {
+                return null;
+            }
+        }
+        if (type == Type.SET && !(mergedUnions.isEmpty() && mergedRemoves.isEmpty())) {
+            // Every array op on a set document has a base value, so this cannot happen
+            return null;
+        }
+        return new PendingMutation(path, type, mergedFields, mergedUnions, mergedRemoves);
+    }
+
+    /**
+     * Folds an array op of the later mutation into the merged state.
+     *
+     * @return False if the op conflicts with an opposite op that cannot be folded.
+     */
+    private boolean mergeArrayOp(String field, List<Object> values, boolean union, Map<String, Object> mergedFields,
+                                 Map<String, List<Object>> mergedUnions, Map<String, List<Object>> mergedRemoves) {
+        if (mergedFields.containsKey(field) || type == Type.SET) {
+            // The field's value is known, so apply the op to it
+            Object base = mergedFields.get(field);
+            Set<Object> result = new LinkedHashSet<>();
+            if (base instanceof List) {
+                result.addAll((List<?>) base);
+            }
+            if (union) {
+                result.addAll(values);
+            } else {
+                result.removeAll(values);
+            }
+            mergedFields.put(field, new ArrayList<>(result));
+            return true;
+        }
+        Map<String, List<Object>> same = union ? mergedUnions : mergedRemoves;
+        Map<String, List<Object>> opposite = union ? mergedRemoves : mergedUnions;
+        if (opposite.containsKey(field)) {
+            return false;
+        }
+        Set<Object> combined = new LinkedHashSet<>();
+        if (same.containsKey(field)) {
+            combined.addAll(same.get(field));
+        }
+        combined.addAll(values);
+        same.put(field, new ArrayList<>(combined));
+        return true;
+    }
+}
@@ -10,6 +10,7 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.squareup.picasso.Picasso;
+import com.squareup.picasso.RequestCreator;
 
 import java.util.List;
 
@@ -20,11 +21,21 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
     private List<ItemPhoto> photoList;
     private PhotoClickListener clickListener;
     private int selectedPosition = RecyclerView.NO_POSITION;
+    private CancellationScope cancellationScope;
 
     public PhotoAdapter( List<ItemPhoto> photoList) {
         this.photoList = photoList;
     }
 
+    /**
+     * Ties the image loads of this adapter to a screen so that they are cancelled when it closes.
+     *
+     * @param cancellationScope The scope of the hosting screen.
+     */
+    public void setCancellationScope(CancellationScope cancellationScope) {
+        this.cancellationScope = cancellationScope;
+    }
+
     @NonNull
     @Override
     public PhotoViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -35,7 +46,12 @@ public class PhotoAdapter extends RecyclerView.Adapter<PhotoAdapter.PhotoViewHol
     @Override
     public void onBindViewHolder(@NonNull PhotoViewHolder holder, int position) {
         ItemPhoto currentPhoto = photoList.get(position);
-        Picasso.get().load(currentPhoto.getPhotoUrl()).fit().centerCrop().into(holder.photoImageView);
+        RequestCreator request = Picasso.get().load(currentPhoto.getPhotoUrl()).fit().centerCrop();
+        if (cancellationScope != null) {
+            cancellationScope.loadInto(request, holder.photoImageView);
+        } else {
+            request.into(holder.photoImageView);
+        }
         holder.itemView.setOnClickListener(v -> {
             // Toggle the selection state when the photo is clicked
             int previousSelectedPosition = selectedPosition;
@@ -3,31 +3,40 @@ package com.example.onestopshop;
 import android.net.Uri;
 import android.util.Log;
 
-import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
 import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageException;
 import com.google.firebase.storage.StorageReference;
 import com.google.firebase.storage.UploadTask;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Controller class for managing photos related operations, including upload, download, and deletion.
  */
 public class PhotosController {
+    private static final int MAX_UPLOAD_ATTEMPTS = 4;
+
+    private String itemId;
     private StorageReference storageRef;
     private CollectionReference photosRef;
     private OnPhotoListUpdateListener photoListUpdateListener;
+    private Executor callbackExecutor;
+    private ListenerRegistration registration;
 
     /**
      * Constructor for creating a PhotosController associated with a specific item.
@@ -35,6 +44,18 @@ public class PhotosController {
      * @param itemId The ID of the item to which the photos belong.
      */
     public PhotosController(String itemId) {
+        this(itemId, AppExecutors.background());
+    }
+
+    /**
+     * Constructor for creating a PhotosController whose snapshot listener runs on the given executor.
+     * Only the finished, immutable photo list is posted to the main thread. The listener is only
+     * registered once a photo list listener is set.
+     *
+     * @param itemId           The ID of the item to which the photos belong.
+     * @param callbackExecutor The executor on which snapshots are parsed.
+     */
+    public PhotosController(String itemId, Executor callbackExecutor) {
         if (itemId == null || itemId.isEmpty()) {
             // dont create reference
             return;
@@ -43,113 +64,122 @@ public class PhotosController {
         String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
         storageRef = FirebaseStorage.getInstance().getReference().child("users").child(userId).child("photos").child(itemId);
         photosRef = db.collection("users").document(userId).collection("items").document(itemId).collection("photos");
-        photosRef.addSnapshotListener((queryDocumentSnapshots, e) -> {
-            if (e != null) {
-                // Handle errors
-                return;
-            }
-            if (queryDocumentSnapshots != null) {
-                ArrayList<ItemPhoto> updatedData = new ArrayList<>();
-                for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
-                    String photoUrl = doc.getString("photoUrl");
-                    String photoId = doc.getString("photoId");
-                    ItemPhoto itemPhoto = new ItemPhoto(photoId, photoUrl);
-                    updatedData.add(itemPhoto);
-                }
-                if (photoListUpdateListener != null) {
-                    photoListUpdateListener.onPhotoListUpdated(updatedData);
-                }
-            }
-        });
+        this.itemId = itemId;
+        this.callbackExecutor = callbackExecutor;
     }
 
     /**
      * Uploads a single photo to Firebase Storage and stores its download link in Firestore.
+     * The photo ID is derived from the item and the photo's URI, so uploading the same photo
+     * again, or retrying a failed upload, replaces the same file and link rather than adding
+     * a copy. Transient upload failures are retried with backoff.
+     * Cancelling the returned future cancels the upload if it is still running.
      *
      * @param photoUri The URI of the photo to be uploaded.
+     * @return A future completed with the download URL once the link is stored.
      */
-    public void uploadPhoto(Uri photoUri) {
+    public CompletableFuture<String> uploadPhoto(Uri photoUri) {
         // Get a reference to the location where you want to store the photo in Firebase Storage
-        String photoId = UUID.randomUUID().toString();
-
+        String photoId = IdempotencyKeys.fromValue("photo:" + itemId, photoUri.toString());
 
         // Upload the photo to Firebase Storage
-        storageRef.child(photoId).putFile(photoUri)
-                .addOnCompleteListener(new OnCompleteListener<UploadTask.TaskSnapshot>() {
-                    @Override
-                    public void onComplete(Task<UploadTask.TaskSnapshot> task) {
-                        if (task.isSuccessful()) {
-                            // Photo upload successful, get the download URL
-                            Task<Uri> downloadUrlTask = task.getResult().getStorage().getDownloadUrl();
-                            downloadUrlTask.addOnCompleteListener(new OnCompleteListener<Uri>() {
-                                @Override
-                                public void onComplete(Task<Uri> uriTask) {
-                                    if (uriTask.isSuccessful()) {
-                                        // Download URL obtained, store it in Firestore
-                                        String photoUrl = uriTask.getResult().toString();
-                                        storeDownloadLink(photoId,photoUrl);
-                                    }
-                                }
-                            });
-                        }
-                    }
+        CompletableFuture<UploadTask.TaskSnapshot> upload = TaskFutures.retry(
+                () -> WriteScheduler.getInstance().submit(WriteScheduler.STORAGE, 1,
+                        () -> TaskFutures.toFuture(storageRef.child(photoId).putFile(photoUri))),
+                MAX_UPLOAD_ATTEMPTS, PhotosController::isTransient);
+        CompletableFuture<String> result = upload
+                // Photo upload successful, get the download URL
+                .thenCompose(taskSnapshot -> TaskFutures.toFuture(taskSnapshot.getStorage().getDownloadUrl()))
+                .thenCompose(uri -> {
+                    // Download URL obtained, store it in Firestore
+                    String photoUrl = uri.toString();
+                    return storeDownloadLink(photoId, photoUrl).thenApply(aVoid -> photoUrl);
                 });
+        result.whenComplete((photoUrl, e) -> {
+            if (result.isCancelled()) {
+                upload.cancel(false);
+            }
+        });
+        return result;
+    }
+    private static boolean isTransient(Throwable e) {
+        if (!(e instanceof StorageException)) {
+            return false;
+        }
+        switch (((StorageException) e).getErrorCode()) {
+            case StorageException.ERROR_RETRY_LIMIT_EXCEEDED:
+            case StorageException.ERROR_UNKNOWN:
+                return true;
+            default:
+                return false;
+        }
     }
+
     /**
      * Stores the download link and photo ID in Firestore after a successful photo upload.
      *
      * @param photoId  The unique ID associated with the uploaded photo.
      * @param photoUrl The download URL of the uploaded photo.
+     * @return A future completed when the link is stored.
      */
-    private void storeDownloadLink(String photoId, String photoUrl) {
+    private CompletableFuture<Void> storeDownloadLink(String photoId, String photoUrl) {
         // Create a new document in the "images" collection and store the download link
         Map<String, Object> itemData = new HashMap<>();
         itemData.put("photoId", photoId);
         itemData.put("photoUrl", photoUrl);
-        photosRef.document(photoId).set(itemData)
-                .addOnSuccessListener(aVoid -> {
-                    // Successfully stored download link in Firestore
-                })
-                .addOnFailureListener(e -> {
-                    // Handle failure to store download link
-                });
+        return WriteJournal.getInstance().enqueue(PendingMutation.set(photosRef.document(photoId).getPath(), itemData));
     }
     /**
      * Uploads multiple photos to Firebase Storage and stores their download links in Firestore.
+     * The uploads run in parallel.
      *
      * @param photoUris A list of URIs for the photos to be uploaded.
+     * @return A future completed when every photo is uploaded and linked.
      */
-    public void uploadAllPhotos(List<Uri> photoUris) {
+    public CompletableFuture<Void> uploadAllPhotos(List<Uri> photoUris) {
+        List<CompletableFuture<String>> uploads = new ArrayList<>();
         for(Uri uri : photoUris){
-            uploadPhoto(uri);
+            uploads.add(uploadPhoto(uri));
         }
+        return CompletableFuture.allOf(uploads.toArray(new CompletableFuture[0]));
     }
 
     /**
      * Deletes a photo from Firebase Storage and its reference from Firestore.
      *
      * @param photoId The ID of the photo to be deleted.
+     * @return A future completed when both the reference and the file are deleted.
      */
-    public void deletePhoto(String photoId) {
+    public CompletableFuture<Void> deletePhoto(String photoId) {
         // Create references to the photo in Firebase Storage and Firestore
         StorageReference photoStorageRef = storageRef.child(photoId);
         DocumentReference photoDocRef = photosRef.document(photoId);
-        Log.d("EditItemGalleryController", "Delete-during");
-        photoDocRef.delete()
-                .addOnSuccessListener(aVoid -> {
-                    // Photo reference deleted from Firestore, now delete the photo from storage
-                    photoStorageRef.delete()
-                            .addOnSuccessListener(aVoid1 -> {
-                                // Photo deleted from storage
-                                Log.d("EditItemGalleryController", "Delete-duringStorageS");
-                            })
-                            .addOnFailureListener(e -> {
-                                // Handle failure to delete photo from storage
-                                Log.d("EditItemGalleryController", "Delete-duringStorageF");
-                            });
-                })
-                .addOnFailureListener(e -> {
-                    // Handle failure to delete photo reference from Firestore
+        // Delete the reference first, then the photo from storage
+        return WriteJournal.getInstance().enqueue(PendingMutation.delete(photoDocRef.getPath()))
+                .thenCompose(aVoid -> WriteScheduler.getInstance().submit(WriteScheduler.STORAGE, 1,
+                        () -> TaskFutures.toFuture(photoStorageRef.delete())))
+                .whenComplete((aVoid, e) -> {
+                    if (e != null) {
+                        Log.d("EditItemGalleryController", "Failed to delete photo " + photoId, e);
+                    }
+                });
+    }
+
+    /**
+     * Retrieves the download URL of the item's first photo from Firestore.
+     *
+     * @return A future completed with the URL, or with null if the item has no photos.
+     */
+    public CompletableFuture<String> getDownloadUrl() {
+        if (photosRef == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return TaskFutures.toFuture(photosRef.limit(1).get())
+                .thenApply(queryDocumentSnapshots -> {
+                    if (queryDocumentSnapshots.isEmpty()) {
+                        return null;
+                    }
+                    return queryDocumentSnapshots.getDocuments().get(0).getString("photoUrl");
                 });
     }
 
@@ -157,20 +187,66 @@ public class PhotosController {
      * Retrieves the download URL of a photo from Firestore.
      *
      * @param callback Callback to handle success or failure of the download URL retrieval.
+     *                 A null URL is passed when the item has no photos.
      */
     public void getDownloadUrl(DownloadUrlCallback callback) {
-        if(photosRef != null) {
-            photosRef.limit(1).get()
-                    .addOnSuccessListener(queryDocumentSnapshots -> {
-                        if (!queryDocumentSnapshots.isEmpty()) {
-                            String downloadUrl = queryDocumentSnapshots.getDocuments().get(0).getString("photoUrl");
-                            callback.onSuccess(downloadUrl);
-                        } else {
-
-                        }
-                    })
-                    .addOnFailureListener(e -> callback.onFailure(e));
+        getDownloadUrl().whenComplete((downloadUrl, e) -> {
+            if (e != null) {
+                callback.onFailure(new Exception(TaskFutures.unwrap(e)));
+            } else {
+                callback.onSuccess(downloadUrl);
+            }
+        });
+    }
+
+    /**
+     * Resolves the first photo URL of several items in one batch. The per-item queries are
+     * issued together and the future completes once all of them have completed.
+     * Items without photos (or whose query failed) map to an empty string.
+     *
+     * @param itemIds The IDs of the items whose first photo should be resolved.
+     * @return A future completed with a map from item ID to photo URL.
+     */
+    public static CompletableFuture<Map<String, String>> getFirstPhotoUrls(List<String> itemIds) {
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
+        CollectionReference itemsRef = db.collection("users").document(userId).collection("items");
+        List<Task<QuerySnapshot>> tasks = new ArrayList<>();
+        for (String itemId : itemIds) {
+            tasks.add(itemsRef.document(itemId).collection("photos").limit(1).get());
         }
+        return TaskFutures.toFuture(Tasks.whenAllComplete(tasks)).thenApply(done -> {
+            Map<String, String> photoUrls = new HashMap<>();
+            for (int i = 0; i < itemIds.size(); i++) {
+                Task<QuerySnapshot> task = tasks.get(i);
+                String photoUrl = "";
+                if (task.isSuccessful() && !task.getResult().isEmpty()) {
+                    String url = task.getResult().getDocuments().get(0).getString("photoUrl");
+                    if (url != null) {
+                        photoUrl = url;
+                    }
+                }
+                photoUrls.put(itemIds.get(i), photoUrl);
+            }
+            return photoUrls;
+        });
+    }
+
+    /**
+     * Resolves the first photo URL of several items in one batch.
+     *
+     * @param itemIds  The IDs of the items whose first photo should be resolved.
+     * @param listener Callback receiving a map from item ID to photo URL.
+     */
+    public static void getFirstPhotoUrls(List<String> itemIds, OnPhotoUrlsFetchListener listener) {
+        getFirstPhotoUrls(itemIds).thenAccept(listener::onPhotoUrlsFetched);
+    }
+
+    /**
+     * Interface for receiving the result of a batched first-photo lookup.
+     */
+    public interface OnPhotoUrlsFetchListener {
+        void onPhotoUrlsFetched(Map<String, String> photoUrls);
     }
 
     /**
@@ -183,10 +259,40 @@ public class PhotosController {
     }
 
     /**
-     * @param listener
+     * Sets the listener for photo list updates and registers the snapshot listener on the
+     * photos collection if it is not registered yet.
+     *
+     * @param listener Receives the photo list on the main thread whenever it changes.
+     * @return The snapshot listener registration, to be removed when the caller goes away,
+     * or null if the controller has no item.
      */
-    public void setOnPhotoListUpdateListener(OnPhotoListUpdateListener listener) {
+    public ListenerRegistration setOnPhotoListUpdateListener(OnPhotoListUpdateListener listener) {
         photoListUpdateListener = listener;
+        if (photosRef == null || registration != null) {
+            return registration;
+        }
+        registration = photosRef.addSnapshotListener(callbackExecutor, (queryDocumentSnapshots, e) -> {
+            if (e != null) {
+                // Handle errors
+                return;
+            }
+            if (queryDocumentSnapshots != null) {
+                List<ItemPhoto> updatedData = new ArrayList<>();
+                for (QueryDocumentSnapshot doc : queryDocumentSnapshots) {
+                    String photoUrl = doc.getString("photoUrl");
+                    String photoId = doc.getString("photoId");
+                    ItemPhoto itemPhoto = new ItemPhoto(photoId, photoUrl);
+                    updatedData.add(itemPhoto);
+                }
+                List<ItemPhoto> result = Collections.unmodifiableList(updatedData);
+                AppExecutors.mainThread().execute(() -> {
+                    if (photoListUpdateListener != null) {
+                        photoListUpdateListener.onPhotoListUpdated(result);
+                    }
+                });
+            }
+        });
+        return registration;
     }
     /**
      * Interface for handling updates to the photo list.
@@ -39,7 +39,10 @@ public class SearchActivity extends AppCompatActivity {
         backButton = findViewById(R.id.back);
 
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        ThumbnailLoader thumbnailLoader = new ThumbnailLoader();
+        thumbnailLoader.attachTo(recyclerView);
         itemAdapter = new CustomList(this, dataList);
+        itemAdapter.setThumbnailLoader(thumbnailLoader);
         recyclerView.setAdapter(itemAdapter);
 
         searchButton.setOnClickListener(view -> {
@@ -0,0 +1,87 @@
+package com.example.onestopshop;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Canonicalizes strings that repeat across many items, such as makes, models and tags, so that
+ * every snapshot shares one instance per distinct value instead of holding a fresh copy per item.
+ * Equal values then compare by identity, which {@link String#equals} checks first. The pool stops
+ * growing at a fixed size so that unexpectedly high-cardinality values cannot fill the heap;
+ * values beyond it are returned as they are. Values are kept by generation: a value not asked for
+ * during a whole generation is dropped when the next one starts, which frees room for the values
+ * in use now. Thread-safe.
+ */
+public class StringPool {
+    private final int maxSize;
+    // Values asked for in this generation, and those of the previous one not asked for again yet
+    private Map<String, String> current = new HashMap<>();
+    private Map<String, String> previous = new HashMap<>();
+
+    /**
+     * @param maxSize The largest number of distinct values kept in a generation.
+     */
+    public StringPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the pooled instance of a value, adding the value if it is new and the pool has room.
+     *
+     * @param value The value, or null.
+     * @return An equal string, shared with earlier callers when possible; null for null.
+     */
+    public synchronized String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String pooled = current.get(value);
+        if (pooled != null) {
+            return pooled;
+        }
+        if (current.size() >= maxSize) {
+            pooled = previous.get(value);
+            return pooled != null ? pooled : value;
+        }
+        pooled = previous.remove(value);
+        if (pooled == null) {
+            pooled = value;
+        }
+        current.put(pooled, pooled);
+        return pooled;
+    }
+
+    /**
+     * Returns a copy of a list with every value pooled.
+     *
+     * @param values The values, or null.
+     * @return A new mutable list; empty for null.
+     */
+    public List<String> internAll(List<String> values) {
+        if (values == null) {
+            return new ArrayList<>();
+        }
+        List<String> pooled = new ArrayList<>(values.size());
+        for (String value : values) {
+            pooled.add(intern(value));
+        }
+        return pooled;
+    }
+
+    /**
+     * Starts a new generation, dropping the values not asked for during the last one.
+     */
+    public synchronized void startGeneration() {
+        previous = current;
+        current = new HashMap<>();
+    }
+
+    /**
+     * Returns the number of distinct values in the pool.
+     */
+    public synchronized int size() {
+        return current.size() + previous.size();
+    }
+}
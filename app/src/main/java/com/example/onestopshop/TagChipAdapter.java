@@ -0,0 +1,97 @@
+package com.example.onestopshop;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.google.android.material.chip.Chip;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapter showing tags as chips in a RecyclerView, so that only the visible tags get a view
+ * however many tags there are. The list can be filtered by a search text.
+ */
+public class TagChipAdapter extends RecyclerView.Adapter<TagChipAdapter.TagViewHolder> {
+    private final List<String> allTags;
+    private List<String> normalizedTags;
+    private List<String> shownTags;
+    private final OnTagClickListener clickListener;
+
+    /**
+     * @param tags          The tags to show, in display order.
+     * @param clickListener Notified when a tag is tapped.
+     */
+    public TagChipAdapter(List<String> tags, OnTagClickListener clickListener) {
+        this.allTags = tags;
+        this.shownTags = tags;
+        this.clickListener = clickListener;
+    }
+
+    /**
+     * Shows only the tags containing the search text, ignoring case and extra spaces.
+     *
+     * @param query The search text; empty shows every tag.
+     */
+    public void filter(String query) {
+        String normalizedQuery = TagTrie.normalize(query);
+        if (normalizedQuery.isEmpty()) {
+            shownTags = allTags;
+        } else {
+            if (normalizedTags == null) {
+                // Normalized once, on the first search
+                normalizedTags = new ArrayList<>(allTags.size());
+                for (String tag : allTags) {
+                    normalizedTags.add(TagTrie.normalize(tag));
+                }
+            }
+            List<String> matches = new ArrayList<>();
+            for (int i = 0; i < allTags.size(); i++) {
+                if (normalizedTags.get(i).contains(normalizedQuery)) {
+                    matches.add(allTags.get(i));
+                }
+            }
+            shownTags = matches;
+        }
+        notifyDataSetChanged();
+    }
+
+    @NonNull
+    @Override
+    public TagViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_tag_chip, parent, false);
+        return new TagViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull TagViewHolder holder, int position) {
+        String tag = shownTags.get(position);
+        holder.chip.setText(tag);
+        holder.chip.setOnClickListener(v -> clickListener.onTagClick(tag));
+    }
+
+    @Override
+    public int getItemCount() {
+        return shownTags.size();
+    }
+
+    static class TagViewHolder extends RecyclerView.ViewHolder {
+        final Chip chip;
+
+        TagViewHolder(@NonNull View itemView) {
+            super(itemView);
+            chip = (Chip) itemView;
+        }
+    }
+
+    /**
+     * Interface for handling taps on a tag.
+     */
+    public interface OnTagClickListener {
+        void onTagClick(String tag);
+    }
+}
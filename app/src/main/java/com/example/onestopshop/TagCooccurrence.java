@@ -0,0 +1,278 @@
+package com.example.onestopshop;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Counts how often tags appear together on items, and how often they appear with a make or
+ * model, to suggest the tags most related to what an item already has. The counts are sparse:
+ * only pairs that occur on some item are stored. Items are added, changed and removed one at a
+ * time, so a snapshot only costs work for the items whose tags, make or model changed, and a
+ * lookup only visits the tags related to its context. Tags are compared normalized and
+ * suggested in their latest spelling. Not thread-safe; {@link #copy()} hands the counts to
+ * another thread.
+ */
+public class TagCooccurrence {
+    private static final String MAKE_PREFIX = "make:";
+    private static final String MODEL_PREFIX = "model:";
+
+    // Items containing each feature: a tag, or a make or model with its prefix
+    private final Map<String, Integer> featureCounts = new HashMap<>();
+    // For each feature, the items containing it together with each tag
+    private final Map<String, Map<String, Integer>> pairCounts = new HashMap<>();
+    // What was counted for each item, to spot changes and undo them
+    private final Map<String, Counted> counted = new HashMap<>();
+    // The spelling suggested for each normalized tag
+    private final Map<String, String> spellings = new HashMap<>();
+
+    /**
+     * Returns the features of an item: its distinct tags followed by its make and model.
+     *
+     * @param tags  The item's tags, or null.
+     * @param make  The item's make, or null.
+     * @param model The item's model, or null.
+     * @return The normalized features, with make and model prefixed.
+     */
+    static List<String> features(Collection<String> tags, String make, String model) {
+        Set<String> features = new LinkedHashSet<>();
+        if (tags != null) {
+            for (String tag : tags) {
+                if (tag != null && !tag.trim().isEmpty()) {
+                    features.add(TagTrie.normalize(tag));
+                }
+            }
+        }
+        if (make != null && !make.trim().isEmpty()) {
+            features.add(MAKE_PREFIX + TagTrie.normalize(make));
+        }
+        if (model != null && !model.trim().isEmpty()) {
+            features.add(MODEL_PREFIX + TagTrie.normalize(model));
+        }
+        return new ArrayList<>(features);
+    }
+
+    private static boolean isTag(String feature) {
+        return !feature.startsWith(MAKE_PREFIX) && !feature.startsWith(MODEL_PREFIX);
+    }
+
+    /**
+     * Brings the counts in line with a full inventory: new and changed items are counted again
+     * and items that are gone are removed.
+     *
+     * @param items Every item currently in the inventory.
+     * @return True if any item was counted again or removed.
+     */
+    public boolean sync(Collection<Item> items) {
+        boolean changed = false;
+        Set<String> seen = new HashSet<>();
+        for (Item item : items) {
+            if (item.getItemId() != null) {
+                seen.add(item.getItemId());
+                changed |= put(item);
+            }
+        }
+        for (String itemId : new ArrayList<>(counted.keySet())) {
+            if (!seen.contains(itemId)) {
+                remove(itemId);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Counts a new item, or recounts a changed one. An item whose tags, make and model are
+     * unchanged costs a comparison of the raw values; they are normalized only when they differ.
+     *
+     * @param item The item; must have an ID.
+     * @return True if the item's counts or spellings were updated.
+     */
+    public boolean put(Item item) {
+        Counted previous = counted.get(item.getItemId());
+        if (previous != null && previous.matches(item)) {
+            return false;
+        }
+        List<String> features = features(item.getTags(), item.getMake(), item.getModel());
+        counted.put(item.getItemId(), new Counted(item, features));
+        // A new spelling alone leaves the counts as they are
+        if (previous == null || !features.equals(previous.features)) {
+            if (previous != null) {
+                count(previous.features, -1);
+            }
+            count(features, 1);
+        }
+        if (item.getTags() == null) {
+            return true;
+        }
+        for (String tag : item.getTags()) {
+            if (tag != null && featureCounts.containsKey(TagTrie.normalize(tag))) {
+                spellings.put(TagTrie.normalize(tag), tag.trim());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops counting an item.
+     *
+     * @param itemId The ID of the removed item.
+     */
+    public void remove(String itemId) {
+        Counted previous = counted.remove(itemId);
+        if (previous != null) {
+            count(previous.features, -1);
+        }
+    }
+
+    /**
+     * Forgets every item.
+     */
+    public void clear() {
+        featureCounts.clear();
+        pairCounts.clear();
+        counted.clear();
+        spellings.clear();
+    }
+
+    /**
+     * Returns the number of items counted.
+     */
+    public int size() {
+        return counted.size();
+    }
+
+    /**
+     * Returns an independent copy of the counts, so that they can be counted on one thread
+     * and read on another.
+     *
+     * @return The copy.
+     */
+    public TagCooccurrence copy() {
+        TagCooccurrence copy = new TagCooccurrence();
+        copy.featureCounts.putAll(featureCounts);
+        for (Map.Entry<String, Map<String, Integer>> entry : pairCounts.entrySet()) {
+            copy.pairCounts.put(entry.getKey(), new HashMap<>(entry.getValue()));
+        }
+        // Never changed once stored
+        copy.counted.putAll(counted);
+        copy.spellings.putAll(spellings);
+        return copy;
+    }
+
+    private void count(List<String> features, int delta) {
+        for (String feature : features) {
+            if (!add(featureCounts, feature, delta)) {
+                spellings.remove(feature);
+            }
+            Map<String, Integer> related = pairCounts.get(feature);
+            for (String tag : features) {
+                if (tag.equals(feature) || !isTag(tag)) {
+                    continue;
+                }
+                if (related == null) {
+                    related = new HashMap<>();
+                    pairCounts.put(feature, related);
+                }
+                add(related, tag, delta);
+            }
+            if (related != null && related.isEmpty()) {
+                pairCounts.remove(feature);
+            }
+        }
+    }
+
+    /**
+     * Changes a count, dropping it once it reaches zero.
+     *
+     * @return True if the key is still counted.
+     */
+    private static boolean add(Map<String, Integer> counts, String key, int delta) {
+        Integer count = counts.get(key);
+        int updated = (count == null ? 0 : count) + delta;
+        if (updated > 0) {
+            counts.put(key, updated);
+            return true;
+        }
+        counts.remove(key);
+        return false;
+    }
+
+    /**
+     * Returns the tags most related to a context. Each candidate is scored by how often it
+     * appears on items that have each context feature, as a fraction of those items, summed
+     * over the context. Tags already in the context are left out.
+     *
+     * @param tags  The tags already picked.
+     * @param make  The make entered so far, or null.
+     * @param model The model entered so far, or null.
+     * @param limit The largest number of tags to return.
+     * @return Up to {@code limit} tags, most related first.
+     */
+    public List<String> related(Collection<String> tags, String make, String model, int limit) {
+        List<String> context = features(tags, make, model);
+        Map<String, Double> scores = new HashMap<>();
+        for (String feature : context) {
+            Map<String, Integer> related = pairCounts.get(feature);
+            if (related == null) {
+                continue;
+            }
+            double items = featureCounts.get(feature);
+            for (Map.Entry<String, Integer> entry : related.entrySet()) {
+                Double score = scores.get(entry.getKey());
+                scores.put(entry.getKey(), (score == null ? 0 : score) + entry.getValue() / items);
+            }
+        }
+        // Keep the best few in a small heap whose head is the weakest of them
+        PriorityQueue<Map.Entry<String, Double>> best = new PriorityQueue<>(Math.max(1, limit), (a, b) -> {
+            int byScore = Double.compare(a.getValue(), b.getValue());
+            return byScore != 0 ? byScore : b.getKey().compareTo(a.getKey());
+        });
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            if (context.contains(entry.getKey())) {
+                continue;
+            }
+            best.add(entry);
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+        List<String> result = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            String tag = best.poll().getKey();
+            result.add(spellings.containsKey(tag) ? spellings.get(tag) : tag);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * The raw tags, make and model an item was counted with, and the features made of them.
+     */
+    private static class Counted {
+        final List<String> tags;
+        final String make;
+        final String model;
+        final List<String> features;
+
+        Counted(Item item, List<String> features) {
+            tags = item.getTags() == null ? null : new ArrayList<>(item.getTags());
+            make = item.getMake();
+            model = item.getModel();
+            this.features = features;
+        }
+
+        boolean matches(Item item) {
+            return Objects.equals(tags, item.getTags()) && Objects.equals(make, item.getMake())
+                    && Objects.equals(model, item.getModel());
+        }
+    }
+}
@@ -4,12 +4,16 @@ import android.app.Dialog;
 import android.content.Context;
 import android.content.res.ColorStateList;
 import android.graphics.Color;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.view.View;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.chip.Chip;
 import com.google.android.material.chip.ChipGroup;
@@ -18,41 +22,66 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Custom dialog for managing tags using chips.
+ * Custom dialog for managing tags using chips. Existing tags are suggested as the user types,
+ * most used and most recently used first, and listed in a recycled, searchable list so that
+ * opening the dialog does not depend on the number of tags. Before anything is typed, the
+ * tags that most often go with the selected tags and the item's make and model are suggested.
  */
 public class TagDialog extends Dialog {
+    private static final int MAX_SUGGESTIONS = 5;
+    private static final int TAG_COLUMNS = 3;
+
     Context context;
     ChipGroup addFragmentTags;
     List<String> selectedTags;
     List<String> existingTags;
     ChipGroup selectedTagsChipGroup;
-    ChipGroup existingTagsChipGroup;
+    RecyclerView existingTagsRecyclerView;
+    TagChipAdapter existingTagsAdapter;
+    EditText tagSearchEditText;
+    ChipGroup suggestionsChipGroup;
+    // Built on a background thread; null until ready
+    volatile TagTrie tagTrie;
     EditText tagInputEditText;
     Button  createButton;
     TagsController tagsController;
     Button doneBtn;
+    String make;
+    String model;
 
     /**
      * Constructs a TagDialog.
      *
      * @param context          The context in which the dialog is created.
      * @param selectedTags     The list of selected tags.
-     * @param existingTags     The list of existing tags.
+     * @param existingTags     The existing tags with their usage, most used first.
      * @param addFragmentTags  The ChipGroup in the add fragment.
      */
-    public TagDialog(@NonNull Context context, List<String> selectedTags, List<String> existingTags, ChipGroup addFragmentTags) {
+    public TagDialog(@NonNull Context context, List<String> selectedTags, List<TagUsage> existingTags, ChipGroup addFragmentTags) {
         super(context);
         this.context = context;
         this.addFragmentTags = addFragmentTags;
         this.selectedTags = selectedTags;
-        this.existingTags = existingTags;
+        this.existingTags = new ArrayList<>();
+        for (TagUsage tagUsage : existingTags) {
+            this.existingTags.add(tagUsage.getTag());
+        }
+        List<TagUsage> usage = new ArrayList<>(existingTags);
+        long now = System.currentTimeMillis();
+        AppExecutors.background().execute(() -> {
+            TagTrie trie = new TagTrie(MAX_SUGGESTIONS);
+            trie.putAll(usage, now);
+            tagTrie = trie;
+        });
         initDialog();
     }
 
     private void initDialog(){
         setContentView(R.layout.dialog_tag);
         selectedTagsChipGroup = findViewById(R.id.chipGroupSelectedTags);
-        existingTagsChipGroup = findViewById(R.id.chipGroupExistingTags);
+        existingTagsRecyclerView = findViewById(R.id.recyclerExistingTags);
+        tagSearchEditText = findViewById(R.id.editTextTagSearch);
+        suggestionsChipGroup = findViewById(R.id.chipGroupSuggestions);
         tagInputEditText = findViewById(R.id.editTextTagInput);
         createButton = findViewById(R.id.buttonCreate);
         doneBtn = findViewById(R.id.buttonDone);
@@ -62,28 +91,98 @@ public class TagDialog extends Dialog {
         // Set up click listeners
         createButton.setOnClickListener(v -> onCreateButtonClick());
         doneBtn.setOnClickListener(v -> {dismiss();});
+        tagInputEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                showSuggestions(s.toString());
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+            }
+        });
+
+        // Existing tags are bound lazily as they scroll into view
+        existingTagsAdapter = new TagChipAdapter(existingTags, this::onExistingTagClick);
+        existingTagsRecyclerView.setLayoutManager(new GridLayoutManager(context, TAG_COLUMNS));
+        existingTagsRecyclerView.setAdapter(existingTagsAdapter);
+        tagSearchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                existingTagsAdapter.filter(s.toString());
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+            }
+        });
 
-        // Populate chip groups with existing and selected tags
-        populateChipGroup(existingTagsChipGroup, existingTags, false);
         populateChipGroup(selectedTagsChipGroup, selectedTags, true);
+        showSuggestions("");
 
     }
 
+    /**
+     * Sets the make and model of the item being tagged, so that tags common on items of the same
+     * make and model are suggested.
+     *
+     * @param make  The make entered so far.
+     * @param model The model entered so far.
+     */
+    public void setItemDetails(String make, String model) {
+        this.make = make;
+        this.model = model;
+        showSuggestions(tagInputEditText.getText().toString());
+    }
+
     private void onCreateButtonClick() {
         String newTag = tagInputEditText.getText().toString().trim();
         if (!newTag.isEmpty()) {
-            if(!isExistingTag(newTag) ){
+            // Clear the input field
+            tagInputEditText.setText("");
 
-                // Clear the input field
-                tagInputEditText.setText("");
+            // A tag that exists in another case or spacing is selected rather than duplicated
+            String existingTag = findExistingTag(newTag);
+            addToSelectedTags(existingTag != null ? existingTag : newTag);
+        }
+    }
 
-                // Update the chip group
-                addToSelectedTags(newTag);
-            }
-            else{
-                Toast.makeText(getContext(), "Tag already exists", Toast.LENGTH_SHORT).show();
+    /**
+     * Shows the best matching existing tags for the text typed so far, or the tags related to
+     * the selected tags, make and model if nothing is typed.
+     *
+     * @param prefix The text in the tag input.
+     */
+    private void showSuggestions(String prefix) {
+        suggestionsChipGroup.removeAllViews();
+        List<String> suggestions;
+        TagTrie trie = tagTrie;
+        if (prefix.trim().isEmpty()) {
+            suggestions = InventoryRepository.getInstance().getTagCooccurrence()
+                    .related(selectedTags, make, model, MAX_SUGGESTIONS);
+        } else if (trie != null) {
+            suggestions = trie.suggest(prefix);
+        } else {
+            suggestions = new ArrayList<>();
+        }
+        for (String tag : suggestions) {
+            if (isSelectedTag(tag)) {
+                continue;
             }
+            Chip chip = new Chip(context, null, R.style.ChipStyle);
+            chip.setText(tag);
+            chip.setOnClickListener(v -> onExistingTagClick(tag));
+            suggestionsChipGroup.addView(chip);
         }
+        suggestionsChipGroup.setVisibility(suggestionsChipGroup.getChildCount() > 0 ? View.VISIBLE : View.GONE);
     }
 
     /**
@@ -127,6 +226,7 @@ public class TagDialog extends Dialog {
                         selectedTagsChipGroup.removeView(chip);
                         selectedTags.remove(newTag);
                         addFragmentTags.removeView(chipAdd);
+                        showSuggestions(tagInputEditText.getText().toString());
                     }
                 });
             }
@@ -164,29 +264,40 @@ public class TagDialog extends Dialog {
     }
 
     /**
-     * Checks if a tag already exists in the list of existing tags.
+     * Checks if a tag already exists, ignoring case and extra spaces.
      *
      * @param tag The tag to check for existence.
      * @return True if the tag already exists; otherwise, false.
      */
     public boolean isExistingTag(String tag) {
-        for(String existingTag: existingTags) {
-            if(tag == existingTag){
-                return true;
+        return findExistingTag(tag) != null;
+    }
+
+    private String findExistingTag(String tag) {
+        TagTrie trie = tagTrie;
+        if (trie != null) {
+            return trie.findExisting(tag);
+        }
+        // The trie is still being built
+        String normalized = TagTrie.normalize(tag);
+        for (String existingTag : existingTags) {
+            if (normalized.equals(TagTrie.normalize(existingTag))) {
+                return existingTag;
             }
         }
-            return false;
+        return null;
     }
 
     /**
-     * Checks if a tag is already selected.
+     * Checks if a tag is already selected, ignoring case and extra spaces.
      *
      * @param tag The tag to check for selection.
      * @return True if the tag is already selected; otherwise, false.
      */
     public boolean isSelectedTag(String tag) {
+        String normalized = TagTrie.normalize(tag);
         for(String existingTag: selectedTags) {
-            if(tag.equals(existingTag)){
+            if(normalized.equals(TagTrie.normalize(existingTag))){
                 return true;
             }
         }
@@ -0,0 +1,67 @@
+package com.example.onestopshop;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A set of tags to add to and remove from items, as applied by a bulk tagging job.
+ * Removals are applied before additions, matching the order of the Firestore writes,
+ * so a tag listed in both ends up on the item.
+ */
+public class TagEdit {
+    private final List<String> tagsToAdd;
+    private final List<String> tagsToRemove;
+
+    /**
+     * @param tagsToAdd    Tags to add to every item.
+     * @param tagsToRemove Tags to remove from every item.
+     */
+    public TagEdit(Collection<String> tagsToAdd, Collection<String> tagsToRemove) {
+        this.tagsToAdd = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(tagsToAdd)));
+        this.tagsToRemove = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(tagsToRemove)));
+    }
+
+    public List<String> getTagsToAdd() {
+        return tagsToAdd;
+    }
+
+    public List<String> getTagsToRemove() {
+        return tagsToRemove;
+    }
+
+    /**
+     * Returns true if the edit neither adds nor removes anything.
+     */
+    public boolean isEmpty() {
+        return tagsToAdd.isEmpty() && tagsToRemove.isEmpty();
+    }
+
+    /**
+     * Applies the edit to a list of tags, keeping the order of the existing tags.
+     *
+     * @param tags The current tags.
+     * @return A new list with the edit applied.
+     */
+    public List<String> apply(List<String> tags) {
+        Set<String> result = tags == null ? new LinkedHashSet<>() : new LinkedHashSet<>(tags);
+        result.removeAll(tagsToRemove);
+        result.addAll(tagsToAdd);
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Returns a copy of an item with the edit applied to its tags.
+     *
+     * @param item The item to edit.
+     * @return The edited copy.
+     */
+    public Item applyTo(Item item) {
+        return new Item(item.getItemId(), item.getItemName(), item.getDescription(), item.getPurchaseDate(),
+                item.getMake(), item.getModel(), item.getEstimatedValue(), item.getComments(),
+                item.getSerialNumber(), apply(item.getTags()));
+    }
+}
@@ -0,0 +1,342 @@
+package com.example.onestopshop;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.AggregateQuerySnapshot;
+import com.google.firebase.firestore.AggregateSource;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.Source;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The user's tags with their usage counts, kept in the single document users/{uid}/meta/tags
+ * so that the tag picker costs one read. After an item write that changes tags is confirmed,
+ * the affected tags are recounted with count queries and the results are written as plain
+ * values through the {@link WriteJournal}, so a write that is sent twice cannot count an item
+ * twice, and a rejected item write changes no count. Recounts and rebuilds run one at a time
+ * and are journaled in the order they were computed, so a later result always wins. Tags
+ * waiting for a recount are persisted and recounted once the server can be reached.
+ * The document is rebuilt from the items if it does not exist yet.
+ */
+public class TagRegistry {
+    private static final String TAG = "TagRegistry";
+    private static final String PREFS_NAME = "tag_registry";
+    private static final String COUNTS = "counts";
+    private static final String LAST_USED = "lastUsed";
+    // Each recount costs one aggregation query per tag
+    private static final int MAX_TAGS_PER_RECOUNT = 50;
+    private static final long INITIAL_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 60000;
+
+    private static TagRegistry instance;
+
+    private final String userId;
+    private final DocumentReference registryRef;
+    private final CollectionReference itemsRef;
+    private final SharedPreferences prefs;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Backoff backoff = new Backoff(INITIAL_BACKOFF_MS, MAX_BACKOFF_MS);
+    // Tags whose counts are out of date, with how often each was marked; a tag marked again
+    // while it is being counted stays marked
+    private final Map<String, Integer> staleTags = new LinkedHashMap<>();
+    private final List<CompletableFuture<List<TagUsage>>> rebuildRequests = new ArrayList<>();
+    private boolean working;
+    private boolean retryScheduled;
+
+    private TagRegistry(String userId, Context context) {
+        this.userId = userId;
+        registryRef = FirebaseFirestore.getInstance().collection("users").document(userId)
+                .collection("meta").document("tags");
+        itemsRef = InventoryRepository.getInstance().getItemsRef();
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        restore();
+        AppExecutors.mainThread().execute(this::process);
+    }
+
+    /**
+     * Returns the registry of the signed-in user, creating it if needed.
+     *
+     * @return The shared registry.
+     */
+    public static synchronized TagRegistry getInstance() {
+        String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
+        if (instance == null || !instance.userId.equals(userId)) {
+            instance = new TagRegistry(userId, FirebaseApp.getInstance().getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Fetches every tag in use with its count, reading one document.
+     *
+     * @return A future completed with the tags that at least one item has, most used first.
+     */
+    public CompletableFuture<List<TagUsage>> fetchUsage() {
+        return TaskFutures.toFuture(registryRef.get()).thenCompose(snapshot -> {
+            InventoryRepository.recordDocumentsRead(1);
+            if (snapshot.exists()) {
+                return CompletableFuture.completedFuture(toUsage(snapshot));
+            }
+            return rebuild();
+        });
+    }
+
+    /**
+     * Recounts the tags of every item and overwrites the registry. This reads the whole
+     * inventory from the server, so it only runs when the registry is missing or has to be
+     * repaired. While the server cannot be reached, the read is retried with backoff.
+     *
+     * @return A future completed with the recounted tags.
+     */
+    public CompletableFuture<List<TagUsage>> rebuild() {
+        CompletableFuture<List<TagUsage>> result = new CompletableFuture<>();
+        AppExecutors.mainThread().execute(() -> {
+            rebuildRequests.add(result);
+            process();
+        });
+        return result;
+    }
+
+    /**
+     * Empties the registry after the inventory was cleared. Items added since are counted.
+     *
+     * @return A future completed when the registry is rebuilt.
+     */
+    public CompletableFuture<Void> clear() {
+        return rebuild().thenApply(usage -> null);
+    }
+
+    /**
+     * Records the confirmed tag change of one item.
+     *
+     * @param before The item's tags before the change; empty for a new item.
+     * @param after  The item's tags after the change; empty for a deleted item.
+     */
+    public void recordChanges(Collection<String> before, Collection<String> after) {
+        Map<String, Long> deltas = new LinkedHashMap<>();
+        TagUsage.addChanges(deltas, before, after);
+        recordChanges(deltas);
+    }
+
+    /**
+     * Records confirmed tag changes: the tags are recounted, and tags that were added to items
+     * are marked as just used. May be called on any thread.
+     *
+     * @param deltas Count changes keyed by tag; only which tags changed, and in which
+     *               direction, is used.
+     */
+    public void recordChanges(Map<String, Long> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        Map<String, Long> changes = new LinkedHashMap<>(deltas);
+        AppExecutors.mainThread().execute(() -> {
+            Map<String, Object> lastUsed = new HashMap<>();
+            double now = System.currentTimeMillis();
+            for (Map.Entry<String, Long> entry : changes.entrySet()) {
+                Integer marks = staleTags.get(entry.getKey());
+                staleTags.put(entry.getKey(), marks == null ? 1 : marks + 1);
+                if (entry.getValue() > 0) {
+                    lastUsed.put(LAST_USED + "." + TagUsage.toFieldKey(entry.getKey()), now);
+                }
+            }
+            persist();
+            if (!lastUsed.isEmpty()) {
+                journal(PendingMutation.update(registryRef.getPath(), lastUsed));
+            }
+            process();
+        });
+    }
+
+    /**
+     * Starts the next rebuild or recount unless one is running. Rebuilds go first, since they
+     * recount every tag anyway.
+     */
+    private void process() {
+        if (working || retryScheduled) {
+            return;
+        }
+        if (!rebuildRequests.isEmpty()) {
+            working = true;
+            runRebuild();
+        } else if (!staleTags.isEmpty()) {
+            working = true;
+            runRecount();
+        }
+    }
+
+    private void runRebuild() {
+        List<CompletableFuture<List<TagUsage>>> requests = new ArrayList<>(rebuildRequests);
+        rebuildRequests.clear();
+        // Changes confirmed before the read are part of it
+        Map<String, Integer> covered = new HashMap<>(staleTags);
+        // Rebuilding from the local cache would drop the tags of items it does not hold
+        TaskFutures.toFuture(itemsRef.get(Source.SERVER)).whenCompleteAsync((items, e) -> {
+            working = false;
+            if (e != null) {
+                // The requests wait for the server, ahead of any rebuild asked for since
+                rebuildRequests.addAll(0, requests);
+                scheduleRetry("Failed to rebuild the registry", e);
+                return;
+            }
+            backoff.reset();
+            InventoryRepository.recordDocumentsRead(items.size());
+            Map<String, Long> counts = new HashMap<>();
+            for (QueryDocumentSnapshot document : items) {
+                List<String> tags = (List<String>) document.get("tags");
+                if (tags != null) {
+                    TagUsage.addChanges(counts, Collections.emptyList(), tags);
+                }
+            }
+            Map<String, Object> countField = new HashMap<>();
+            List<TagUsage> usage = new ArrayList<>();
+            for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                countField.put(TagUsage.toFieldKey(entry.getKey()), entry.getValue());
+                usage.add(new TagUsage(entry.getKey(), entry.getValue(), 0));
+            }
+            sortByCount(usage);
+            Map<String, Object> registry = new HashMap<>();
+            registry.put(COUNTS, countField);
+            registry.put(LAST_USED, new HashMap<String, Object>());
+            journal(PendingMutation.set(registryRef.getPath(), registry));
+            unmark(covered);
+            for (CompletableFuture<List<TagUsage>> request : requests) {
+                request.complete(usage);
+            }
+            process();
+        }, AppExecutors.mainThread());
+    }
+
+    private void runRecount() {
+        Map<String, Integer> counting = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : staleTags.entrySet()) {
+            if (counting.size() == MAX_TAGS_PER_RECOUNT) {
+                break;
+            }
+            counting.put(entry.getKey(), entry.getValue());
+        }
+        List<String> tags = new ArrayList<>(counting.keySet());
+        List<CompletableFuture<AggregateQuerySnapshot>> queries = new ArrayList<>();
+        for (String tag : tags) {
+            // Counts need the server; the local cache may not hold every item
+            queries.add(TaskFutures.toFuture(itemsRef.whereArrayContains("tags", tag).count()
+                    .get(AggregateSource.SERVER)));
+        }
+        CompletableFuture.allOf(queries.toArray(new CompletableFuture[0])).whenCompleteAsync((aVoid, e) -> {
+            working = false;
+            if (e != null) {
+                scheduleRetry("Failed to recount tags", e);
+                return;
+            }
+            backoff.reset();
+            Map<String, Object> counts = new HashMap<>();
+            for (int i = 0; i < tags.size(); i++) {
+                counts.put(COUNTS + "." + TagUsage.toFieldKey(tags.get(i)), queries.get(i).join().getCount());
+            }
+            journal(PendingMutation.update(registryRef.getPath(), counts));
+            unmark(counting);
+            process();
+        }, AppExecutors.mainThread());
+    }
+
+    /**
+     * Runs {@link #process()} again once the backoff delay has passed.
+     */
+    private void scheduleRetry(String message, Throwable e) {
+        long delayMs = backoff.nextDelayMs();
+        Log.d(TAG, message + ", retrying in " + delayMs + " ms", TaskFutures.unwrap(e));
+        retryScheduled = true;
+        mainHandler.postDelayed(() -> {
+            retryScheduled = false;
+            process();
+        }, delayMs);
+    }
+
+    /**
+     * Forgets the stale marks a finished count covered, keeping tags marked again since.
+     */
+    private void unmark(Map<String, Integer> covered) {
+        for (Map.Entry<String, Integer> entry : covered.entrySet()) {
+            Integer marks = staleTags.get(entry.getKey());
+            if (marks != null && marks <= entry.getValue()) {
+                staleTags.remove(entry.getKey());
+            } else if (marks != null) {
+                staleTags.put(entry.getKey(), marks - entry.getValue());
+            }
+        }
+        persist();
+    }
+
+    private void journal(PendingMutation mutation) {
+        WriteJournal.getInstance().enqueue(mutation).whenComplete((aVoid, e) -> {
+            if (e != null) {
+                // Most likely the registry does not exist yet; it is built on first read
+                Log.d(TAG, "Failed to update the registry", e);
+            }
+        });
+    }
+
+    private void persist() {
+        prefs.edit().putString(userId, new JSONArray(staleTags.keySet()).toString()).apply();
+    }
+
+    private void restore() {
+        String stored = prefs.getString(userId, null);
+        if (stored == null) {
+            return;
+        }
+        try {
+            JSONArray array = new JSONArray(stored);
+            for (int i = 0; i < array.length(); i++) {
+                staleTags.put(array.getString(i), 1);
+            }
+        } catch (JSONException e) {
+            Log.d(TAG, "Discarding unreadable stale tags", e);
+        }
+    }
+
+    private static List<TagUsage> toUsage(DocumentSnapshot snapshot) {
+        Map<String, Object> counts = (Map<String, Object>) snapshot.get(COUNTS);
+        Map<String, Object> lastUsed = (Map<String, Object>) snapshot.get(LAST_USED);
+        List<TagUsage> usage = new ArrayList<>();
+        if (counts == null) {
+            return usage;
+        }
+        for (Map.Entry<String, Object> entry : counts.entrySet()) {
+            long count = entry.getValue() instanceof Number ? ((Number) entry.getValue()).longValue() : 0;
+            if (count <= 0) {
+                continue;
+            }
+            Object used = lastUsed == null ? null : lastUsed.get(entry.getKey());
+            usage.add(new TagUsage(TagUsage.fromFieldKey(entry.getKey()), count,
+                    used instanceof Number ? ((Number) used).longValue() : 0));
+        }
+        sortByCount(usage);
+        return usage;
+    }
+
+    private static void sortByCount(List<TagUsage> usage) {
+        Collections.sort(usage, (a, b) -> Long.compare(b.getCount(), a.getCount()));
+    }
+}
@@ -0,0 +1,307 @@
+package com.example.onestopshop;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * The tags of a set of items arranged as a hierarchy, where a tag such as "office/it/laptops"
+ * sits below "office/it", which sits below "office". Nodes are numbered in pre-order, and each
+ * node also records the highest number in its subtree, so "is this tag under that one" is a
+ * range check on two integers. The numbers of each item's tags are kept, so filtering the
+ * items the tree was built from compares integers only. Every node counts the items tagged
+ * with it or with anything below it, and their total estimated value. Tags without a separator
+ * are top-level nodes, so flat tags behave as before. Immutable once built; build it once per
+ * snapshot.
+ */
+public class TagTree {
+    /**
+     * Separates the levels of a hierarchical tag.
+     */
+    public static final String SEPARATOR = "/";
+
+    // Keyed by normalized path; the root has the empty path
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Node root = new Node();
+    // The sorted numbers of each item's tags
+    private final Map<Item, int[]> itemTagIds = new IdentityHashMap<>();
+
+    /**
+     * Builds the tree of the tags of some items.
+     *
+     * @param items The items whose tags and values are counted.
+     */
+    public TagTree(Collection<Item> items) {
+        nodes.put("", root);
+        Map<Item, List<Node>> itemTags = new IdentityHashMap<>();
+        for (Item item : items) {
+            if (item.getTags() == null) {
+                continue;
+            }
+            List<Node> tagged = new ArrayList<>(item.getTags().size());
+            // An item tagged "office/it" and "office/hr" counts once for "office"
+            Set<Node> counted = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (String tag : item.getTags()) {
+                if (tag == null) {
+                    continue;
+                }
+                Node tagNode = getOrCreate(normalizePath(tag));
+                if (tagNode != root) {
+                    tagged.add(tagNode);
+                }
+                for (Node node = tagNode; node != root; node = node.parent) {
+                    if (!counted.add(node)) {
+                        break;
+                    }
+                    node.itemCount++;
+                    node.totalValue += item.getEstimatedValue();
+                }
+            }
+            itemTags.put(item, tagged);
+        }
+        number();
+        for (Map.Entry<Item, List<Node>> entry : itemTags.entrySet()) {
+            int[] ids = new int[entry.getValue().size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = entry.getValue().get(i).id;
+            }
+            Arrays.sort(ids);
+            itemTagIds.put(entry.getKey(), ids);
+        }
+    }
+
+    /**
+     * Normalizes a hierarchical tag: segments are trimmed and empty segments dropped.
+     *
+     * @param tag The tag, e.g. " office / it/".
+     * @return The normalized path, e.g. "office/it"; empty if the tag has no segments.
+     */
+    public static String normalizePath(String tag) {
+        StringBuilder path = new StringBuilder();
+        for (String segment : tag.split(SEPARATOR)) {
+            String trimmed = segment.trim();
+            if (!trimmed.isEmpty()) {
+                if (path.length() > 0) {
+                    path.append(SEPARATOR);
+                }
+                path.append(trimmed);
+            }
+        }
+        return path.toString();
+    }
+
+    private Node getOrCreate(String path) {
+        Node node = nodes.get(path);
+        if (node == null) {
+            int separator = path.lastIndexOf(SEPARATOR);
+            Node parent = separator < 0 ? root : getOrCreate(path.substring(0, separator));
+            node = new Node();
+            node.parent = parent;
+            parent.children.put(path.substring(separator + 1), node);
+            nodes.put(path, node);
+        }
+        return node;
+    }
+
+    /**
+     * Numbers the nodes in pre-order, children in name order, without recursion so that deep
+     * hierarchies cannot overflow the stack.
+     */
+    private void number() {
+        int next = 0;
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        List<Node> order = new ArrayList<>(nodes.size());
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            node.id = next++;
+            order.add(node);
+            List<Node> children = new ArrayList<>(node.children.values());
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+        // A subtree ends where the last of its descendants, which are numbered after it, ends
+        for (int i = order.size() - 1; i >= 0; i--) {
+            Node node = order.get(i);
+            node.lastId = node.id;
+            for (Node child : node.children.values()) {
+                node.lastId = Math.max(node.lastId, child.lastId);
+            }
+        }
+    }
+
+    /**
+     * Returns the pre-order number of a tag.
+     *
+     * @param tag The tag.
+     * @return The number, or -1 if no item has the tag or a tag below it.
+     */
+    public int idOf(String tag) {
+        Node node = nodes.get(normalizePath(tag));
+        return node == null || node == root ? -1 : node.id;
+    }
+
+    /**
+     * Checks whether a tag is a given tag or lies below it.
+     *
+     * @param tag      The tag to check.
+     * @param ancestor The top of the subtree.
+     * @return True if the tag is in the subtree.
+     */
+    public boolean isInSubtree(String tag, String ancestor) {
+        Node top = nodes.get(normalizePath(ancestor));
+        int id = idOf(tag);
+        return top != null && top != root && id >= top.id && id <= top.lastId;
+    }
+
+    /**
+     * Returns the number of items tagged with a tag or with any tag below it.
+     */
+    public int getItemCount(String tag) {
+        Node node = nodes.get(normalizePath(tag));
+        return node == null || node == root ? 0 : node.itemCount;
+    }
+
+    /**
+     * Returns the total estimated value of the items tagged with a tag or any tag below it.
+     */
+    public double getTotalValue(String tag) {
+        Node node = nodes.get(normalizePath(tag));
+        return node == null || node == root ? 0 : node.totalValue;
+    }
+
+    /**
+     * Returns the union of the subtrees of some tags, for testing many item tags against it.
+     *
+     * @param tags The tops of the subtrees; unknown tags match nothing.
+     * @return The subtrees.
+     */
+    public Subtrees subtrees(Collection<String> tags) {
+        List<Node> tops = new ArrayList<>();
+        for (String tag : tags) {
+            Node node = tag == null ? null : nodes.get(normalizePath(tag));
+            if (node != null && node != root) {
+                tops.add(node);
+            }
+        }
+        Collections.sort(tops, (a, b) -> Integer.compare(a.id, b.id));
+        // Subtrees are either nested or disjoint, so dropping the nested ones leaves sorted disjoint ranges
+        List<Node> merged = new ArrayList<>();
+        for (Node top : tops) {
+            if (merged.isEmpty() || top.id > merged.get(merged.size() - 1).lastId) {
+                merged.add(top);
+            }
+        }
+        return new Subtrees(merged);
+    }
+
+    /**
+     * A union of subtrees of a {@link TagTree}, stored as sorted, disjoint ranges of node numbers.
+     */
+    public class Subtrees {
+        private final List<Node> tops;
+        private final int[] starts;
+        private final int[] ends;
+
+        private Subtrees(List<Node> tops) {
+            this.tops = tops;
+            starts = new int[tops.size()];
+            ends = new int[tops.size()];
+            for (int i = 0; i < tops.size(); i++) {
+                starts[i] = tops.get(i).id;
+                ends[i] = tops.get(i).lastId;
+            }
+        }
+
+        /**
+         * Checks whether a tag lies in any of the subtrees, with a binary search over the ranges.
+         */
+        public boolean contains(String tag) {
+            return contains(idOf(tag));
+        }
+
+        private boolean contains(int id) {
+            if (id < 0) {
+                return false;
+            }
+            int index = Arrays.binarySearch(starts, id);
+            if (index < 0) {
+                // The range starting just before the tag, if any
+                index = -index - 2;
+            }
+            return index >= 0 && id <= ends[index];
+        }
+
+        /**
+         * Checks whether an item has a tag in the subtrees. For an item the tree was
+         * built from, only the numbers of its tags are compared.
+         *
+         * @param item The item.
+         */
+        public boolean containsItem(Item item) {
+            int[] ids = itemTagIds.get(item);
+            if (ids == null) {
+                return containsAny(item.getTags());
+            }
+            for (int id : ids) {
+                if (contains(id)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the number of items in the subtrees, or -1 if there are several subtrees, since
+         * an item can be in more than one of them.
+         */
+        public int getItemCount() {
+            return tops.size() == 1 ? tops.get(0).itemCount : tops.isEmpty() ? 0 : -1;
+        }
+
+        /**
+         * Returns the total estimated value of the items in the subtrees, or NaN if there are
+         * several subtrees.
+         */
+        public double getTotalValue() {
+            return tops.size() == 1 ? tops.get(0).totalValue : tops.isEmpty() ? 0 : Double.NaN;
+        }
+
+        /**
+         * Checks whether any of some tags lies in the subtrees.
+         *
+         * @param tags The tags, or null.
+         */
+        public boolean containsAny(List<String> tags) {
+            if (tags == null) {
+                return false;
+            }
+            for (String tag : tags) {
+                if (tag != null && contains(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Node {
+        // Keyed by last segment, so children are numbered in name order
+        final Map<String, Node> children = new TreeMap<>();
+        Node parent;
+        int id;
+        int lastId;
+        int itemCount;
+        double totalValue;
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.onestopshop;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A prefix tree over normalized tags for autocomplete. Every node keeps the best few tags
+ * below it, ranked by usage count with a boost for recently used tags, so a lookup costs
+ * one step per prefix character plus copying at most {@code maxSuggestions} results.
+ * Tags that differ only in case or spacing are treated as the same tag.
+ */
+public class TagTrie {
+    // A tag used this long ago gets half of the full recency boost
+    private static final long RECENCY_HALF_LIFE_MS = 14L * 24 * 60 * 60 * 1000;
+
+    private final int maxSuggestions;
+    private final Node root = new Node();
+    private final Comparator<Entry> ranking = (a, b) -> {
+        int byScore = Double.compare(b.score, a.score);
+        return byScore != 0 ? byScore : a.tag.compareTo(b.tag);
+    };
+
+    /**
+     * @param maxSuggestions The largest number of suggestions a lookup returns.
+     */
+    public TagTrie(int maxSuggestions) {
+        this.maxSuggestions = maxSuggestions;
+    }
+
+    /**
+     * Normalizes a tag for comparison: trimmed, lower case, with runs of spaces collapsed.
+     *
+     * @param tag The tag as typed or stored.
+     * @return The normalized form.
+     */
+    public static String normalize(String tag) {
+        return tag.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Ranks a tag: its count, up to doubled for a tag used just now.
+     */
+    static double score(long count, long lastUsed, long now) {
+        double age = Math.max(0, now - lastUsed);
+        double recency = lastUsed <= 0 ? 0 : Math.pow(0.5, age / RECENCY_HALF_LIFE_MS);
+        return count * (1 + recency);
+    }
+
+    /**
+     * Builds the trie from the tag registry in one pass.
+     *
+     * @param usage The tags with their counts and last use.
+     * @param now   The current time, against which recency is measured.
+     */
+    public void putAll(List<TagUsage> usage, long now) {
+        for (TagUsage tagUsage : usage) {
+            insert(tagUsage.getTag(), score(tagUsage.getCount(), tagUsage.getLastUsed(), now), false);
+        }
+        rank(root);
+    }
+
+    /**
+     * Adds a tag or updates its rank, re-ranking the nodes along its path.
+     *
+     * @param tag   The tag, in the form it should be suggested in.
+     * @param count The number of items with the tag.
+     * @param lastUsed When the tag was last used, or 0 if unknown.
+     * @param now   The current time.
+     */
+    public void put(String tag, long count, long lastUsed, long now) {
+        List<Node> path = insert(tag, score(count, lastUsed, now), true);
+        for (int i = path.size() - 1; i >= 0; i--) {
+            rankNode(path.get(i));
+        }
+    }
+
+    private List<Node> insert(String tag, double score, boolean replace) {
+        String key = normalize(tag);
+        List<Node> path = new ArrayList<>(key.length() + 1);
+        Node node = root;
+        path.add(node);
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            Node child = node.children.get(c);
+            if (child == null) {
+                child = new Node();
+                node.children.put(c, child);
+            }
+            node = child;
+            path.add(node);
+        }
+        if (replace || node.entry == null || node.entry.score <= score) {
+            // Of several spellings of a tag in the registry, the better ranked one is suggested
+            node.entry = new Entry(tag.trim(), score);
+        }
+        return path;
+    }
+
+    private void rank(Node node) {
+        for (Node child : node.children.values()) {
+            rank(child);
+        }
+        rankNode(node);
+    }
+
+    /**
+     * Recomputes a node's best tags from its own tag and its children's best tags.
+     */
+    private void rankNode(Node node) {
+        List<Entry> candidates = new ArrayList<>();
+        if (node.entry != null) {
+            candidates.add(node.entry);
+        }
+        for (Node child : node.children.values()) {
+            candidates.addAll(child.best);
+        }
+        Collections.sort(candidates, ranking);
+        node.best = new ArrayList<>(candidates.subList(0, Math.min(maxSuggestions, candidates.size())));
+    }
+
+    /**
+     * Returns the best ranked tags starting with a prefix.
+     *
+     * @param prefix The text typed so far; normalized before the lookup.
+     * @return Up to {@code maxSuggestions} tags, best first.
+     */
+    public List<String> suggest(String prefix) {
+        Node node = find(normalize(prefix));
+        List<String> suggestions = new ArrayList<>();
+        if (node != null) {
+            for (Entry entry : node.best) {
+                suggestions.add(entry.tag);
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * Returns the stored spelling of a tag, so that a tag typed in another case or with extra
+     * spaces is not added as a duplicate.
+     *
+     * @param tag The tag to look up.
+     * @return The stored tag, or null if there is none.
+     */
+    public String findExisting(String tag) {
+        Node node = find(normalize(tag));
+        return node == null || node.entry == null ? null : node.entry.tag;
+    }
+
+    private Node find(String key) {
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        return node;
+    }
+
+    private static class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        Entry entry;
+        List<Entry> best = new ArrayList<>();
+    }
+
+    private static class Entry {
+        final String tag;
+        final double score;
+
+        Entry(String tag, double score) {
+            this.tag = tag;
+            this.score = score;
+        }
+    }
+}
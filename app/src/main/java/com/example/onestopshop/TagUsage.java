@@ -0,0 +1,112 @@
+package com.example.onestopshop;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * How often a tag is used across the inventory and when it was last added to an item,
+ * as kept in the tag registry.
+ */
+public class TagUsage {
+    // Characters that cannot appear unescaped in a dot-separated Firestore field path
+    private static final String RESERVED = "%.~*/[]`";
+
+    private final String tag;
+    private final long count;
+    private final long lastUsed;
+
+    /**
+     * @param tag      The tag.
+     * @param count    The number of items with the tag.
+     * @param lastUsed When the tag was last added to an item, in milliseconds since the epoch.
+     */
+    public TagUsage(String tag, long count, long lastUsed) {
+        this.tag = tag;
+        this.count = count;
+        this.lastUsed = lastUsed;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getLastUsed() {
+        return lastUsed;
+    }
+
+    /**
+     * Adds the count changes of one item's tags going from one list to another.
+     *
+     * @param deltas Count changes keyed by tag, added to in place.
+     * @param before The item's tags before the change; empty for a new item.
+     * @param after  The item's tags after the change; empty for a deleted item.
+     */
+    public static void addChanges(Map<String, Long> deltas, Collection<String> before, Collection<String> after) {
+        Set<String> added = new LinkedHashSet<>(after);
+        added.removeAll(before);
+        Set<String> removed = new LinkedHashSet<>(before);
+        removed.removeAll(after);
+        for (String tag : added) {
+            addDelta(deltas, tag, 1);
+        }
+        for (String tag : removed) {
+            addDelta(deltas, tag, -1);
+        }
+    }
+
+    private static void addDelta(Map<String, Long> deltas, String tag, long delta) {
+        Long previous = deltas.get(tag);
+        long sum = previous == null ? delta : previous + delta;
+        if (sum == 0) {
+            deltas.remove(tag);
+        } else {
+            deltas.put(tag, sum);
+        }
+    }
+
+    /**
+     * Escapes a tag for use as a map key in a field path, so that tags containing dots or
+     * other reserved characters address a single key.
+     *
+     * @param tag The tag.
+     * @return The key, with reserved characters percent-encoded.
+     */
+    public static String toFieldKey(String tag) {
+        StringBuilder key = new StringBuilder(tag.length());
+        for (int i = 0; i < tag.length(); i++) {
+            char c = tag.charAt(i);
+            if (RESERVED.indexOf(c) >= 0) {
+                key.append('%').append(String.format("%02X", (int) c));
+            } else {
+                key.append(c);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Reverses {@link #toFieldKey(String)}.
+     *
+     * @param key The escaped key.
+     * @return The tag.
+     */
+    public static String fromFieldKey(String key) {
+        StringBuilder tag = new StringBuilder(key.length());
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '%' && i + 2 < key.length()) {
+                tag.append((char) Integer.parseInt(key.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                tag.append(c);
+            }
+        }
+        return tag.toString();
+    }
+}
@@ -1,39 +1,78 @@
 package com.example.onestopshop;
 
-import androidx.annotation.NonNull;
-
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
-import com.google.firebase.firestore.QuerySnapshot;
 
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Class for TagsController that fetches tags from firestore
  */
 public class TagsController {
+    // A rename takes two operations per item, so a page of this size fills one batch
+    private static final int RENAME_PAGE_SIZE = BatchWriter.MAX_BATCH_SIZE / 2;
+
     private CollectionReference itemsRef;
+    private final TagRegistry tagRegistry;
 
     public TagsController() {
 
         FirebaseFirestore db = FirebaseFirestore.getInstance();
         String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
         itemsRef = db.collection("users").document(userId).collection("items");
+        tagRegistry = TagRegistry.getInstance();
+    }
+
+    /**
+     * Fetches existing tags from the tag registry, which costs a single document read.
+     *
+     * @return A future completed with the unique tags of all items, most used first.
+     */
+    public CompletableFuture<List<String>> fetchExistingTags() {
+        return fetchTagUsage().thenApply(usage -> {
+            List<String> tags = new ArrayList<>();
+            for (TagUsage tagUsage : usage) {
+                tags.add(tagUsage.getTag());
+            }
+            return tags;
+        });
+    }
+
+    /**
+     * Fetches existing tags with their usage counts from the tag registry.
+     *
+     * @return A future completed with the tags in use, most used first.
+     */
+    public CompletableFuture<List<TagUsage>> fetchTagUsage() {
+        return tagRegistry.fetchUsage();
+    }
+
+    /**
+     * Fetches existing tags with their usage counts and passes them to the listener.
+     *
+     * @param listener The listener to handle the result of the fetch.
+     */
+    public void fetchTagUsage(OnTagUsageFetchListener listener) {
+        fetchTagUsage().whenComplete((usage, e) -> {
+            if (e != null) {
+                listener.onFailure(new Exception(TaskFutures.unwrap(e)));
+            } else {
+                listener.onSuccess(usage);
+            }
+        });
     }
 
     /**
@@ -42,30 +81,13 @@ public class TagsController {
      * @param listener The listener to handle the result of tag fetch operation.
      */
     public void fetchExistingTags(OnTagsFetchListener listener) {
-        // Fetch existing tags from Firestore
-        itemsRef.get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    List<String> existingTags = new ArrayList<>();
-
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        // Check if 'tags' field exists in the document
-                        if (document.contains("tags")) {
-                            List<String> itemTags = (List<String>) document.get("tags");
-                            existingTags.addAll(itemTags);
-                        }
-                    }
-
-                    // Remove duplicates by converting to a Set and back to a List
-                    Set<String> uniqueTagsSet = new HashSet<>(existingTags);
-                    List<String> uniqueTagsList = new ArrayList<>(uniqueTagsSet);
-
-                    // Invoke the listener's onSuccess method with the existing tags
-                    listener.onSuccess(uniqueTagsList);
-                })
-                .addOnFailureListener(e -> {
-                    // Handle failure
-                    listener.onFailure(e);
-                });
+        fetchExistingTags().whenComplete((existingTags, e) -> {
+            if (e != null) {
+                listener.onFailure(new Exception(TaskFutures.unwrap(e)));
+            } else {
+                listener.onSuccess(existingTags);
+            }
+        });
     }
 
     /**
@@ -73,15 +95,154 @@ public class TagsController {
      *
      * @param itemId The ID of the item to which the tag is added.
      * @param tag    The tag to be added to the item.
+     * @return A future completed when the tag is stored.
      */
-    public void uploadTag(String itemId, String tag) {
-        itemsRef.document(itemId).update("tags", FieldValue.arrayUnion(tag))
-                .addOnSuccessListener(documentReference -> {
-
-                })
-                .addOnFailureListener(e -> {
-                    // Handle failure to add the item to Firestore
-                });
+    public CompletableFuture<Void> uploadTag(String itemId, String tag) {
+        Item current = InventoryRepository.getInstance().getItemCache().get(itemId);
+        CompletableFuture<Void> write = WriteScheduler.getInstance().submit(WriteScheduler.ITEMS, 1,
+                () -> TaskFutures.toFuture(itemsRef.document(itemId).update("tags", FieldValue.arrayUnion(tag))));
+        if (current != null && (current.getTags() == null || !current.getTags().contains(tag))) {
+            return write.thenRun(() -> tagRegistry.recordChanges(Collections.emptyList(),
+                    Collections.singletonList(tag)));
+        }
+        return write;
+    }
+
+    /**
+     * Adds and removes tags on many items at once. The edit is shown in the inventory
+     * immediately, and the writes are committed in chunked batches. Items that are no longer
+     * in the live inventory are skipped, since updating a deleted item would fail its whole
+     * batch. Must be called on the main thread.
+     *
+     * @param itemIds  The IDs of the items to edit.
+     * @param edit     The tags to add and remove.
+     * @param listener Notified after every committed batch, or null.
+     * @return A future completed with the number of edited items. If some batches failed, it
+     * fails with a {@link BatchWriter.PartialWriteException} after the other batches were committed.
+     */
+    public CompletableFuture<Integer> applyTagEdit(List<String> itemIds, TagEdit edit,
+                                                   BatchWriter.OnBatchProgressListener listener) {
+        if (edit.isEmpty() || itemIds.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        InventoryRepository repository = InventoryRepository.getInstance();
+        List<String> ids = liveIds(repository, itemIds);
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        repository.addPendingTagEdit(ids, edit);
+        // An array field takes one union or remove per write, so an item may need two operations
+        int opsPerItem = (edit.getTagsToAdd().isEmpty() ? 0 : 1) + (edit.getTagsToRemove().isEmpty() ? 0 : 1);
+        Object[] added = edit.getTagsToAdd().toArray();
+        Object[] removed = edit.getTagsToRemove().toArray();
+        // The registry recounts the edited tags, so items that are not in memory are covered too
+        Map<String, Long> tagChanges = new HashMap<>();
+        TagUsage.addChanges(tagChanges, edit.getTagsToRemove(), edit.getTagsToAdd());
+        return new BatchWriter().writeAll(ids, opsPerItem, (batch, itemId) -> {
+            DocumentReference itemRef = itemsRef.document(itemId);
+            if (removed.length > 0) {
+                batch.update(itemRef, "tags", FieldValue.arrayRemove(removed));
+            }
+            if (added.length > 0) {
+                batch.update(itemRef, "tags", FieldValue.arrayUnion(added));
+            }
+        }, listener).whenCompleteAsync((count, e) -> {
+            repository.removePendingTagEdit(ids, edit);
+            // Recounting is exact, so committed batches are counted even if others failed
+            tagRegistry.recordChanges(tagChanges);
+        }, AppExecutors.mainThread());
+    }
+
+    /**
+     * Returns the IDs that are still in the live inventory, or all of them if no snapshot is loaded.
+     */
+    private static List<String> liveIds(InventoryRepository repository, List<String> itemIds) {
+        List<Item> latestItems = repository.getLatestItems();
+        if (latestItems == null) {
+            return new ArrayList<>(itemIds);
+        }
+        Set<String> live = new HashSet<>();
+        for (Item item : latestItems) {
+            live.add(item.getItemId());
+        }
+        List<String> ids = new ArrayList<>();
+        for (String itemId : itemIds) {
+            if (live.contains(itemId)) {
+                ids.add(itemId);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Renames a tag on every item that has it, or merges it into another tag that some items
+     * already have. Affected items are found with an array-contains query one page at a time
+     * and rewritten in chunked batches; renamed items no longer match the query, so running
+     * the same rename again after a failure resumes where it stopped. The tag counts are
+     * updated as each page commits, and the rename is shown in the inventory right away.
+     * Must be called on the main thread.
+     *
+     * @param oldTag   The tag to replace, spelled exactly as stored.
+     * @param newTag   The tag to replace it with.
+     * @param listener Notified on the main thread after every committed page, or null. The total
+     *                 is the number of affected items in the live inventory, if it is loaded.
+     * @return A future completed with the number of renamed items.
+     */
+    public CompletableFuture<Integer> renameTag(String oldTag, String newTag,
+                                                BatchWriter.OnBatchProgressListener listener) {
+        String replacement = newTag.trim();
+        if (replacement.isEmpty() || replacement.equals(oldTag)) {
+            return CompletableFuture.completedFuture(0);
+        }
+        TagEdit edit = new TagEdit(Collections.singletonList(replacement), Collections.singletonList(oldTag));
+        InventoryRepository repository = InventoryRepository.getInstance();
+        List<String> shownIds = new ArrayList<>();
+        List<Item> latestItems = repository.getLatestItems();
+        if (latestItems != null) {
+            for (Item item : latestItems) {
+                if (item.getTags() != null && item.getTags().contains(oldTag)) {
+                    shownIds.add(item.getItemId());
+                }
+            }
+            repository.addPendingTagEdit(shownIds, edit);
+        }
+        Query page = itemsRef.whereArrayContains("tags", oldTag).limit(RENAME_PAGE_SIZE);
+        return renamePage(page, edit, 0, latestItems == null ? -1 : shownIds.size(), listener)
+                .whenCompleteAsync((count, e) -> repository.removePendingTagEdit(shownIds, edit),
+                        AppExecutors.mainThread());
+    }
+
+    private CompletableFuture<Integer> renamePage(Query page, TagEdit edit, int renamed, int total,
+                                                  BatchWriter.OnBatchProgressListener listener) {
+        return TaskFutures.toFuture(page.get()).thenCompose(snapshot -> {
+            InventoryRepository.recordDocumentsRead(snapshot.size());
+            if (snapshot.isEmpty()) {
+                return CompletableFuture.completedFuture(renamed);
+            }
+            List<DocumentReference> refs = new ArrayList<>();
+            Map<String, Long> tagChanges = new HashMap<>();
+            for (QueryDocumentSnapshot document : snapshot) {
+                List<String> tags = (List<String>) document.get("tags");
+                TagUsage.addChanges(tagChanges, tags, edit.apply(tags));
+                refs.add(document.getReference());
+            }
+            Object[] removed = edit.getTagsToRemove().toArray();
+            Object[] added = edit.getTagsToAdd().toArray();
+            return new BatchWriter().writeAll(refs, 2, (batch, itemRef) -> {
+                batch.update(itemRef, "tags", FieldValue.arrayRemove(removed));
+                batch.update(itemRef, "tags", FieldValue.arrayUnion(added));
+            }, null).thenComposeAsync(count -> {
+                tagRegistry.recordChanges(tagChanges);
+                int soFar = renamed + count;
+                if (listener != null) {
+                    listener.onProgress(soFar, Math.max(total, soFar));
+                }
+                if (snapshot.size() < RENAME_PAGE_SIZE) {
+                    return CompletableFuture.completedFuture(soFar);
+                }
+                return renamePage(page, edit, soFar, total, listener);
+            }, AppExecutors.mainThread());
+        });
     }
 
     /**
@@ -93,4 +254,13 @@ public class TagsController {
         void onFailure(Exception e);
     }
 
+    /**
+     * The interface to listen for fetches of tags with their usage counts.
+     */
+    public interface OnTagUsageFetchListener {
+        void onSuccess(List<TagUsage> tagUsage);
+
+        void onFailure(Exception e);
+    }
+
 }
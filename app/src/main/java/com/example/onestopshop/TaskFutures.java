@@ -0,0 +1,140 @@
+package com.example.onestopshop;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.storage.CancellableTask;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Helpers for turning Play Services {@link Task}s into {@link CompletableFuture}s so that
+ * controller calls can be chained, run in parallel, cancelled and given timeouts.
+ */
+public final class TaskFutures {
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor();
+    private static final long RETRY_INITIAL_MS = 500;
+    private static final long RETRY_MAX_MS = 30000;
+
+    private TaskFutures() {
+    }
+
+    /**
+     * Wraps a task in a future. The future completes on the main thread, like task listeners.
+     * Cancelling the future cancels the task when it supports cancellation (Storage uploads and
+     * downloads); otherwise the task's result is simply ignored.
+     *
+     * @param task The task to wrap.
+     * @param <T>  The result type.
+     * @return A future completed with the task's result or failure.
+     */
+    public static <T> CompletableFuture<T> toFuture(Task<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        task.addOnCompleteListener(done -> {
+            if (done.isCanceled()) {
+                future.cancel(false);
+            } else if (done.isSuccessful()) {
+                future.complete(done.getResult());
+            } else {
+                future.completeExceptionally(done.getException());
+            }
+        });
+        if (task instanceof CancellableTask) {
+            future.whenComplete((result, e) -> {
+                if (future.isCancelled()) {
+                    ((CancellableTask<?>) task).cancel();
+                }
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Fails a future with a {@link TimeoutException} if it has not completed in time.
+     *
+     * @param future  The future to guard.
+     * @param timeout The maximum time to wait.
+     * @param unit    The unit of the timeout.
+     * @param <T>     The result type.
+     * @return The same future, for chaining.
+     */
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeout, TimeUnit unit) {
+        ScheduledFuture<?> timer = TIMER.schedule(
+                () -> future.completeExceptionally(new TimeoutException("Timed out after " + unit.toMillis(timeout) + " ms")),
+                timeout, unit);
+        future.whenComplete((result, e) -> timer.cancel(false));
+        return future;
+    }
+
+    /**
+     * Runs an operation, retrying failures with jittered exponential backoff. Only retry
+     * idempotent operations, e.g. writes to a fixed document ID or Storage path.
+     *
+     * @param attempt     Starts one attempt.
+     * @param maxAttempts The number of attempts before giving up.
+     * @param retriable   Decides whether a failure is worth retrying.
+     * @param <T>         The result type.
+     * @return A future completed with the first successful result, or the last failure.
+     * Cancelling it stops further attempts and cancels the running one.
+     */
+    public static <T> CompletableFuture<T> retry(Supplier<CompletableFuture<T>> attempt, int maxAttempts,
+                                                 Predicate<Throwable> retriable) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        runAttempt(attempt, maxAttempts, retriable, new Backoff(RETRY_INITIAL_MS, RETRY_MAX_MS), result);
+        return result;
+    }
+
+    private static <T> void runAttempt(Supplier<CompletableFuture<T>> attempt, int attemptsLeft,
+                                       Predicate<Throwable> retriable, Backoff backoff, CompletableFuture<T> result) {
+        if (result.isDone()) {
+            return;
+        }
+        CompletableFuture<T> current = attempt.get();
+        result.whenComplete((value, e) -> {
+            if (result.isCancelled()) {
+                current.cancel(false);
+            }
+        });
+        current.whenComplete((value, e) -> {
+            if (e == null) {
+                result.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(e);
+            if (attemptsLeft <= 1 || current.isCancelled() || !retriable.test(cause)) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            TIMER.schedule(() -> runAttempt(attempt, attemptsLeft - 1, retriable, backoff, result),
+                    backoff.nextDelayMs(), TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /**
+     * Returns a future that has already failed, for argument checks in controller methods.
+     */
+    public static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    /**
+     * Unwraps the {@link CompletionException} that dependent stages wrap failures in.
+     *
+     * @param e The failure passed to a stage.
+     * @return The original cause.
+     */
+    public static Throwable unwrap(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            return e.getCause();
+        }
+        return e;
+    }
+}
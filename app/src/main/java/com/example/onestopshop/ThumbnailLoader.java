@@ -0,0 +1,201 @@
+package com.example.onestopshop;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.squareup.picasso.Picasso;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Loads the first photo of each inventory row as a thumbnail.
+ * Photo URLs are resolved in batches covering the rows bound in a layout pass plus a
+ * prefetch window ahead of the current scroll direction. Image loads of rows that are
+ * recycled, and prefetches behind the scroll direction, are cancelled.
+ */
+public class ThumbnailLoader extends RecyclerView.OnScrollListener {
+    private static final int PREFETCH_WINDOW = 8;
+    private static final Object PREFETCH_TAG = new Object();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // itemId -> first photo URL, "" when the item has no photos
+    private final Map<String, String> photoUrls = new HashMap<>();
+    private final Set<String> inFlight = new LinkedHashSet<>();
+    private final Set<String> pending = new LinkedHashSet<>();
+    private final Set<String> prefetchIds = new LinkedHashSet<>();
+    private final Map<ImageView, String> boundViews = new WeakHashMap<>();
+    private RecyclerView recyclerView;
+    private int scrollDirection;
+    private boolean flushPosted;
+
+    /**
+     * Starts listening to the scroll events of a RecyclerView to drive prefetching.
+     *
+     * @param recyclerView The RecyclerView whose adapter is a CustomList.
+     */
+    public void attachTo(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+        recyclerView.addOnScrollListener(this);
+    }
+
+    /**
+     * Binds the thumbnail of an item to a row's ImageView, resolving the URL if needed.
+     *
+     * @param imageView The thumbnail view of the row.
+     * @param itemId    The ID of the item shown in the row.
+     */
+    public void bind(ImageView imageView, String itemId) {
+        Picasso.get().cancelRequest(imageView);
+        showPlaceholder(imageView);
+        if (itemId == null || itemId.isEmpty()) {
+            boundViews.remove(imageView);
+            return;
+        }
+        boundViews.put(imageView, itemId);
+        String photoUrl = photoUrls.get(itemId);
+        if (photoUrl != null) {
+            loadInto(imageView, photoUrl);
+        } else {
+            request(itemId);
+        }
+    }
+
+    /**
+     * Cancels the image load of a row that has scrolled away.
+     *
+     * @param imageView The thumbnail view of the recycled row.
+     */
+    public void unbind(ImageView imageView) {
+        boundViews.remove(imageView);
+        Picasso.get().cancelRequest(imageView);
+    }
+
+    /**
+     * Drops all resolved URLs so that they are looked up again, e.g. after photos were edited.
+     */
+    public void invalidate() {
+        photoUrls.clear();
+        for (Map.Entry<ImageView, String> entry : boundViews.entrySet()) {
+            request(entry.getValue());
+        }
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0) {
+            return;
+        }
+        int direction = dy > 0 ? 1 : -1;
+        if (direction != scrollDirection) {
+            // Prefetches behind the new scroll direction are no longer useful
+            Picasso.get().cancelTag(PREFETCH_TAG);
+            prefetchIds.clear();
+            scrollDirection = direction;
+        }
+        prefetchAhead();
+    }
+
+    /**
+     * Requests the URLs of the rows just beyond the visible range in the scroll direction.
+     */
+    private void prefetchAhead() {
+        if (recyclerView == null || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)
+                || !(recyclerView.getAdapter() instanceof CustomList)) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        List<Item> items = ((CustomList) recyclerView.getAdapter()).getItemList();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int from = scrollDirection > 0 ? last + 1 : Math.max(0, first - PREFETCH_WINDOW);
+        int to = scrollDirection > 0 ? Math.min(items.size() - 1, last + PREFETCH_WINDOW) : first - 1;
+        for (int position = from; position <= to; position++) {
+            String itemId = items.get(position).getItemId();
+            if (itemId == null || itemId.isEmpty() || !prefetchIds.add(itemId)) {
+                continue;
+            }
+            String photoUrl = photoUrls.get(itemId);
+            if (photoUrl != null) {
+                prefetch(photoUrl);
+            } else {
+                request(itemId);
+            }
+        }
+    }
+
+    /**
+     * Queues an item for URL resolution. All requests made before the next main loop
+     * iteration are resolved together in one batch.
+     */
+    private void request(String itemId) {
+        if (inFlight.contains(itemId)) {
+            return;
+        }
+        pending.add(itemId);
+        if (!flushPosted) {
+            flushPosted = true;
+            mainHandler.post(this::flush);
+        }
+    }
+
+    private void flush() {
+        flushPosted = false;
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<String> batch = new ArrayList<>(pending);
+        pending.clear();
+        inFlight.addAll(batch);
+        PhotosController.getFirstPhotoUrls(batch, resolved -> {
+            inFlight.removeAll(batch);
+            photoUrls.putAll(resolved);
+            for (Map.Entry<ImageView, String> entry : new ArrayList<>(boundViews.entrySet())) {
+                String photoUrl = resolved.get(entry.getValue());
+                if (photoUrl != null) {
+                    loadInto(entry.getKey(), photoUrl);
+                }
+            }
+            // Only warm the cache for prefetched rows that are still ahead of the scroll
+            for (String itemId : batch) {
+                String photoUrl = resolved.get(itemId);
+                if (prefetchIds.contains(itemId) && photoUrl != null && !boundViews.containsValue(itemId)) {
+                    prefetch(photoUrl);
+                }
+            }
+        });
+    }
+
+    private void loadInto(ImageView imageView, String photoUrl) {
+        if (photoUrl.isEmpty()) {
+            showPlaceholder(imageView);
+            return;
+        }
+        Picasso.get().load(photoUrl).fit().centerCrop().into(imageView);
+        imageView.setBackgroundColor(0);
+    }
+
+    private void prefetch(String photoUrl) {
+        if (!photoUrl.isEmpty()) {
+            Picasso.get().load(photoUrl).tag(PREFETCH_TAG).fetch();
+        }
+    }
+
+    private void showPlaceholder(ImageView imageView) {
+        imageView.setImageResource(R.drawable.baseline_image_24);
+        imageView.setBackgroundResource(R.color.defaultPurple);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.onestopshop;
+
+/**
+ * A token bucket whose refill rate adapts to contention: it is halved when the server
+ * pushes back and grows by a fixed step after every success, up to the configured maximum
+ * (additive increase, multiplicative decrease). The bucket holds at most one second of
+ * tokens at the maximum rate. Not thread-safe; times are in milliseconds.
+ */
+public class TokenBucket {
+    private static final double DECREASE_FACTOR = 0.5;
+    // Recovering from one halving takes about this many successes
+    private static final int INCREASE_STEPS = 20;
+
+    private final double maxRate;
+    private final double minRate;
+    private double rate;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param maxRate The highest rate, in tokens per second.
+     * @param minRate The rate never drops below this, in tokens per second.
+     * @param now     The current time.
+     */
+    public TokenBucket(double maxRate, double minRate, long now) {
+        this.maxRate = maxRate;
+        this.minRate = Math.min(minRate, maxRate);
+        rate = maxRate;
+        tokens = maxRate;
+        lastRefill = now;
+    }
+
+    /**
+     * Takes tokens if enough are available. A cost larger than the bucket is capped at the
+     * bucket size so that large batches still go through, just less often.
+     *
+     * @param cost The number of tokens needed.
+     * @param now  The current time.
+     * @return True if the tokens were taken.
+     */
+    public boolean tryAcquire(int cost, long now) {
+        refill(now);
+        double needed = Math.min(cost, maxRate);
+        if (tokens < needed) {
+            return false;
+        }
+        tokens -= needed;
+        return true;
+    }
+
+    /**
+     * Returns how long until {@link #tryAcquire} would succeed for a cost, at the current rate.
+     *
+     * @param cost The number of tokens needed.
+     * @param now  The current time.
+     * @return The delay in milliseconds, 0 if the tokens are available now.
+     */
+    public long delayUntilAvailable(int cost, long now) {
+        refill(now);
+        double missing = Math.min(cost, maxRate) - tokens;
+        return missing <= 0 ? 0 : (long) Math.ceil(missing * 1000 / rate);
+    }
+
+    /**
+     * Records a successful request, raising the rate by one step.
+     */
+    public void onSuccess() {
+        rate = Math.min(maxRate, rate + maxRate / INCREASE_STEPS);
+    }
+
+    /**
+     * Records a request rejected because of contention or exhausted quota, halving the rate.
+     */
+    public void onContention() {
+        rate = Math.max(minRate, rate * DECREASE_FACTOR);
+        // Drop the burst allowance so that the lower rate takes effect at once
+        tokens = Math.min(tokens, rate);
+    }
+
+    public double getRate() {
+        return rate;
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            tokens = Math.min(maxRate, tokens + (now - lastRefill) * rate / 1000);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.onestopshop;
+
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+
+/**
+ * Merges bursts of updates into at most one update per display frame.
+ * While updates keep arriving frame after frame the merged update is held back, but never
+ * for longer than the maximum latency, so a bulk operation that fires hundreds of snapshots
+ * costs a handful of relayouts instead of one per snapshot. Must be used on the main thread.
+ *
+ * @param <T> The type of update.
+ */
+public class UpdateCoalescer<T> implements Choreographer.FrameCallback {
+    /**
+     * Default upper bound on how long an update may be held back.
+     */
+    public static final long DEFAULT_MAX_LATENCY_MS = 250;
+
+    private final Consumer<T> target;
+    private final BinaryOperator<T> merge;
+    private final long maxLatencyMs;
+    private T pending;
+    private boolean hasPending;
+    private boolean frameScheduled;
+    // Whether another update arrived since the last frame callback
+    private boolean arrivedSinceFrame;
+    private long firstPendingAt;
+    private int submittedCount;
+    private int appliedCount;
+
+    /**
+     * Creates a coalescer that keeps only the latest update, for updates that are full snapshots.
+     *
+     * @param target       Receives the merged updates.
+     * @param maxLatencyMs The longest time an update may be held back.
+     */
+    public UpdateCoalescer(Consumer<T> target, long maxLatencyMs) {
+        this(target, (older, newer) -> newer, maxLatencyMs);
+    }
+
+    /**
+     * Creates a coalescer.
+     *
+     * @param target       Receives the merged updates.
+     * @param merge        Combines a pending update with a newer one.
+     * @param maxLatencyMs The longest time an update may be held back.
+     */
+    public UpdateCoalescer(Consumer<T> target, BinaryOperator<T> merge, long maxLatencyMs) {
+        this.target = target;
+        this.merge = merge;
+        this.maxLatencyMs = maxLatencyMs;
+    }
+
+    /**
+     * Queues an update, merging it with any update that has not been applied yet.
+     *
+     * @param update The update.
+     */
+    public void submit(T update) {
+        submittedCount++;
+        if (hasPending) {
+            pending = merge.apply(pending, update);
+            arrivedSinceFrame = true;
+        } else {
+            pending = update;
+            hasPending = true;
+            firstPendingAt = SystemClock.uptimeMillis();
+        }
+        if (!frameScheduled) {
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Applies the pending update right away, e.g. before the screen is left.
+     */
+    public void flush() {
+        if (frameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            frameScheduled = false;
+        }
+        apply();
+    }
+
+    /**
+     * Drops the pending update without applying it.
+     */
+    public void cancel() {
+        if (frameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            frameScheduled = false;
+        }
+        pending = null;
+        hasPending = false;
+        arrivedSinceFrame = false;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        if (!hasPending) {
+            return;
+        }
+        boolean stillBursting = arrivedSinceFrame;
+        arrivedSinceFrame = false;
+        if (stillBursting && SystemClock.uptimeMillis() - firstPendingAt < maxLatencyMs) {
+            // Wait one more frame for the burst to settle
+            frameScheduled = true;
+            Choreographer.getInstance().postFrameCallback(this);
+            return;
+        }
+        apply();
+    }
+
+    /**
+     * Returns how many updates were submitted.
+     */
+    public int getSubmittedCount() {
+        return submittedCount;
+    }
+
+    /**
+     * Returns how many merged updates were applied.
+     */
+    public int getAppliedCount() {
+        return appliedCount;
+    }
+
+    private void apply() {
+        if (!hasPending) {
+            return;
+        }
+        T update = pending;
+        pending = null;
+        hasPending = false;
+        arrivedSinceFrame = false;
+        appliedCount++;
+        target.accept(update);
+    }
+}
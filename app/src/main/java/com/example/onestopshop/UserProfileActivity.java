@@ -1,12 +1,17 @@
 package com.example.onestopshop;
 
+import androidx.activity.result.ActivityResultLauncher;
+import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 
 import android.content.Intent;
+import android.net.Uri;
 import android.os.Bundle;
 import android.view.View;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -18,12 +23,26 @@ import com.google.android.gms.tasks.Task;
 
 import com.google.firebase.auth.FirebaseAuth;
 
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
 /**
- * UserProfileActivity displays user profile information and allows users to log out.
+ * UserProfileActivity displays user profile information and allows users to log out
+ * import or export items, and rename tags.
  */
 public class UserProfileActivity extends AppCompatActivity {
     private Button logOutButton;
     private Button backButton;
+    private Button importButton;
+    private Button exportButton;
+    private Button renameTagButton;
+    private TextView transferStatus;
+    private ActivityResultLauncher<String[]> pickImportFileLauncher;
+    private ActivityResultLauncher<String> createExportFileLauncher;
+    private ItemExporter.Format exportFormat = ItemExporter.Format.CSV;
+    private boolean exportGzip;
+    private boolean exportPhotos;
+    private CancellationScope cancellationScope;
     private TextView displayName;
     private TextView email;
     private InventoryController inventoryController;
@@ -41,6 +60,11 @@ public class UserProfileActivity extends AppCompatActivity {
         backButton = findViewById(R.id.buttonBack);
         email = findViewById(R.id.tvEmail);
         displayName = findViewById(R.id.tvName);
+        importButton = findViewById(R.id.buttonImport);
+        exportButton = findViewById(R.id.buttonExport);
+        renameTagButton = findViewById(R.id.buttonRenameTag);
+        transferStatus = findViewById(R.id.tvTransferStatus);
+        cancellationScope = CancellationScope.of(this);
 
         // Set the email and display name based on user data from the controller
         email.setText("Email: " + inventoryController.getUserEmail());
@@ -71,6 +95,22 @@ public class UserProfileActivity extends AppCompatActivity {
             }
         });
 
+        pickImportFileLauncher = registerForActivityResult(new ActivityResultContracts.OpenDocument(), uri -> {
+            if (uri != null) {
+                importItems(uri);
+            }
+        });
+        importButton.setOnClickListener(v -> pickImportFileLauncher.launch(
+                new String[]{"text/csv", "text/comma-separated-values", "application/json", "text/plain"}));
+
+        createExportFileLauncher = registerForActivityResult(new ActivityResultContracts.CreateDocument("*/*"), uri -> {
+            if (uri != null) {
+                exportItems(uri);
+            }
+        });
+        exportButton.setOnClickListener(v -> showExportOptionsDialog());
+        renameTagButton.setOnClickListener(v -> showRenameTagDialog());
+
         // Set an onClickListener for the back button
         backButton.setOnClickListener(new View.OnClickListener() {
             @Override
@@ -80,4 +120,112 @@ public class UserProfileActivity extends AppCompatActivity {
             }
         });
     }
+
+    /**
+     * Imports items from a CSV or JSON file, resuming an earlier import of the same file
+     * if it did not finish.
+     *
+     * @param uri The file chosen by the user.
+     */
+    private void importItems(Uri uri) {
+        ItemImporter importer = new ItemImporter(this);
+        importButton.setEnabled(false);
+        transferStatus.setText(importer.hasCheckpoint(uri) ? "Resuming import..." : "Importing...");
+        cancellationScope.deliver(importer.importItems(uri, (imported, rejected, rowsPerSecond) ->
+                transferStatus.setText(String.format(Locale.getDefault(),
+                        "Imported %d items, skipped %d invalid rows (%.0f rows/s)",
+                        imported, rejected, rowsPerSecond))), (imported, e) -> {
+            importButton.setEnabled(true);
+            if (e != null) {
+                transferStatus.setText("Import stopped; choose the file again to resume");
+            } else {
+                transferStatus.setText("Imported " + imported + " items");
+            }
+        });
+    }
+
+    /**
+     * Displays a dialog for choosing the export format, then asks where to save the file.
+     */
+    private void showExportOptionsDialog() {
+        String[] formats = {"CSV", "Compressed CSV (.csv.gz)", "JSON"};
+        int[] choice = {0};
+        new AlertDialog.Builder(this)
+                .setTitle("Export Items")
+                .setSingleChoiceItems(formats, 0, (dialog, which) -> choice[0] = which)
+                .setPositiveButton("Export", (dialog, which) -> startExport(choice[0], false))
+                .setNeutralButton("Export with Photo Links", (dialog, which) -> startExport(choice[0], true))
+                .show();
+    }
+
+    private void startExport(int formatChoice, boolean includePhotos) {
+        exportFormat = formatChoice == 2 ? ItemExporter.Format.JSON : ItemExporter.Format.CSV;
+        exportGzip = formatChoice == 1;
+        exportPhotos = includePhotos;
+        String fileName = "inventory" + (exportFormat == ItemExporter.Format.JSON ? ".json" : ".csv")
+                + (exportGzip ? ".gz" : "");
+        createExportFileLauncher.launch(fileName);
+    }
+
+    /**
+     * Writes the inventory to the file chosen by the user.
+     *
+     * @param uri The file to write.
+     */
+    private void exportItems(Uri uri) {
+        exportButton.setEnabled(false);
+        transferStatus.setText("Exporting...");
+        ItemExporter exporter = new ItemExporter(this);
+        cancellationScope.deliver(exporter.exportItems(uri, exportFormat, exportGzip, exportPhotos,
+                exported -> transferStatus.setText("Exported " + exported + " items...")), (exported, e) -> {
+            exportButton.setEnabled(true);
+            if (e != null) {
+                transferStatus.setText("Export failed");
+            } else {
+                transferStatus.setText("Exported " + exported + " items");
+            }
+        });
+    }
+
+    /**
+     * Displays a dialog for renaming a tag, or merging it into another tag, on every item.
+     */
+    private void showRenameTagDialog() {
+        View view = getLayoutInflater().inflate(R.layout.dialog_rename_tag, null);
+        EditText oldTagText = view.findViewById(R.id.editTextOldTag);
+        EditText newTagText = view.findViewById(R.id.editTextNewTag);
+        new AlertDialog.Builder(this)
+                .setTitle("Rename Tag")
+                .setView(view)
+                .setPositiveButton("Rename", (dialog, which) -> renameTag(
+                        oldTagText.getText().toString().trim(), newTagText.getText().toString().trim()))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    /**
+     * Renames a tag on every item. Renaming the same tag again resumes a rename that stopped.
+     *
+     * @param oldTag The tag to rename.
+     * @param newTag The new name.
+     */
+    private void renameTag(String oldTag, String newTag) {
+        if (oldTag.isEmpty() || newTag.isEmpty()) {
+            Toast.makeText(this, "Enter both tags", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        renameTagButton.setEnabled(false);
+        transferStatus.setText("Renaming \"" + oldTag + "\"...");
+        TagsController tagsController = new TagsController();
+        CompletableFuture<Integer> rename = tagsController.renameTag(oldTag, newTag, (renamed, total) ->
+                transferStatus.setText("Renamed tag on " + renamed + " of " + total + " items..."));
+        cancellationScope.deliver(rename, (renamed, e) -> {
+            renameTagButton.setEnabled(true);
+            if (e != null) {
+                transferStatus.setText("Rename stopped; rename the tag again to resume");
+            } else {
+                transferStatus.setText("Renamed tag on " + renamed + " items");
+            }
+        });
+    }
 }
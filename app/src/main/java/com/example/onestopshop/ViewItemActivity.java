@@ -17,6 +17,8 @@ import com.google.android.material.chip.ChipGroup;
 import com.squareup.picasso.Picasso;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Activity for viewing the details of a specific item.
@@ -25,6 +27,7 @@ import java.util.List;
  */
 
 public class ViewItemActivity extends AppCompatActivity {
+    private static final long FETCH_TIMEOUT_SECONDS = 10;
     private InventoryController inventoryController;
     private PhotosController photosController;
     private TextView itemName;
@@ -41,6 +44,7 @@ public class ViewItemActivity extends AppCompatActivity {
     private Button btnEdit;
     ChipGroup tagsGroup;
     private ImageView itemPhoto;
+    private CancellationScope cancellationScope;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -63,49 +67,33 @@ public class ViewItemActivity extends AppCompatActivity {
         itemPhoto = findViewById(R.id.productImage);
         Intent intent = getIntent();
         String itemId = intent.getStringExtra("itemId");
+        cancellationScope = CancellationScope.of(this);
         photosController = new PhotosController(itemId);
         inventoryController = new InventoryController(); // Initialize controller
 
         if (itemId != null) {
-            inventoryController.getItemById(itemId, new InventoryController.OnItemFetchListener() {
+            // Show the item handed over by the list right away, then follow the live document
+            Item cachedItem = inventoryController.getCachedItem(itemId);
+            if (cachedItem != null) {
+                displayItemDetails(cachedItem);
+            }
+            inventoryController.observeItem(this, itemId, new InventoryController.OnItemFetchListener() {
                 @Override
                 public void onItemFetched(Item item) {
-                    if (item != null) {
-                        // Item retrieved successfully, now use it to populate the view
-                        displayItemDetails(item);
-                    } else {
-                        // Handle case when item fetch fails
-                    }
+                    displayItemDetails(item);
                 }
 
                 @Override
                 public void onItemFetchFailed() {
-                    // Handle failure to fetch item
-                    Toast.makeText(ViewItemActivity.this, "Error fetching item details.", Toast.LENGTH_SHORT).show();
+                    // The item was deleted elsewhere or can no longer be read
+                    if (!isFinishing()) {
+                        Toast.makeText(ViewItemActivity.this, "Error fetching item details.", Toast.LENGTH_SHORT).show();
+                        finish();
+                    }
                 }
             });
         }
 
-        photosController.getDownloadUrl(new PhotosController.DownloadUrlCallback() {
-            @Override
-            public void onSuccess(String downloadUrl) {
-                if (downloadUrl != null && !downloadUrl.isEmpty()) {
-                    // Use the download URL here, for example, load it into an ImageView
-                    Picasso.get().load(downloadUrl).into(itemPhoto);
-                    itemPhoto.setBackgroundColor(0);
-                } else {
-                    // If there's no download URL leave the default image
-
-                }
-            }
-
-            @Override
-            public void onFailure(Exception e) {
-                // Handle failure
-
-            }
-        });
-
         itemPhoto.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
@@ -124,8 +112,15 @@ public class ViewItemActivity extends AppCompatActivity {
         btnDelete.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                inventoryController.deleteItem(itemId);
+                // Finish first so that the item vanishing locally is not reported as an error
                 finish();
+                inventoryController.deleteItem(itemId).whenComplete((aVoid, e) -> {
+                    if (e != null) {
+                        // The item has been restored; this screen is already gone
+                        Toast.makeText(getApplicationContext(), "Could not delete the item",
+                                Toast.LENGTH_LONG).show();
+                    }
+                });
             }
         });
         btnEdit.setOnClickListener(new View.OnClickListener() {
@@ -143,46 +138,25 @@ public class ViewItemActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        Intent intent = getIntent();
-        String itemId = intent.getStringExtra("itemId");
-        inventoryController = new InventoryController(); // Initialize your controller
-        if (itemId != null) {
-            inventoryController.getItemById(itemId, new InventoryController.OnItemFetchListener() {
-                @Override
-                public void onItemFetched(Item item) {
-                    if (item != null) {
-                        // Item retrieved successfully, now use it to populate the view
-                        displayItemDetails(item);
-                    } else {
-                        // Handle case when item fetch fails
-                    }
-                }
-
-                @Override
-                public void onItemFetchFailed() {
-                    // Handle failure to fetch item
-                    Toast.makeText(ViewItemActivity.this, "Error fetching item details.", Toast.LENGTH_SHORT).show();
-                }
-            });
-        }
-        photosController.getDownloadUrl(new PhotosController.DownloadUrlCallback() {
-            @Override
-            public void onSuccess(String downloadUrl) {
-                if (downloadUrl != null && !downloadUrl.isEmpty()) {
-                    Picasso.get().load(downloadUrl).into(itemPhoto);
-                    itemPhoto.setBackgroundColor(0);
-                } else {
-                    // If there's no download URL leave the default image
-                    itemPhoto.setImageResource(R.drawable.baseline_image_24);
-                    int defaultColor = ContextCompat.getColor(ViewItemActivity.this, R.color.defaultPurple);
-                    itemPhoto.setBackgroundColor(defaultColor);
-                }
-            }
-
-            @Override
-            public void onFailure(Exception e) {
-                // Handle failure
+        // Photos may have changed in the gallery
+        loadPhoto();
+    }
 
+    /**
+     * Fetches the item's first photo and shows it, or the default image if there is none.
+     */
+    private void loadPhoto() {
+        CompletableFuture<String> photoFuture = TaskFutures.withTimeout(
+                photosController.getDownloadUrl(), FETCH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        cancellationScope.deliver(photoFuture, (downloadUrl, e) -> {
+            if (e == null && downloadUrl != null && !downloadUrl.isEmpty()) {
+                cancellationScope.loadInto(Picasso.get().load(downloadUrl), itemPhoto);
+                itemPhoto.setBackgroundColor(0);
+            } else {
+                // If there's no download URL (or it failed to load) show the default image
+                itemPhoto.setImageResource(R.drawable.baseline_image_24);
+                int defaultColor = ContextCompat.getColor(ViewItemActivity.this, R.color.defaultPurple);
+                itemPhoto.setBackgroundColor(defaultColor);
             }
         });
     }
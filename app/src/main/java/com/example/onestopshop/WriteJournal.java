@@ -0,0 +1,442 @@
+package com.example.onestopshop;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Persistent record of document writes that have not been confirmed by the server.
+ * A write is journaled and handed to Firestore at once, so the local cache and every snapshot
+ * show it right away, also offline; Firestore queues it until the server can be reached.
+ * The journal tracks each write until it is confirmed or rejected, and replays the writes
+ * still unconfirmed when the app is started again, merging writes to the same document.
+ * A write is never sent again while Firestore still holds it. A write that fails transiently
+ * is sent again with jittered exponential backoff, and immediately once the network comes
+ * back; one that fails permanently, or transiently too many times, is dropped and its
+ * futures fail. All journaled writes (set, update with plain values and array transforms,
+ * delete) are idempotent, so replaying a write that Firestore had also kept is harmless.
+ * The journal is used from the main thread.
+ */
+public class WriteJournal {
+    private static final String TAG = "WriteJournal";
+    private static final String PREFS_NAME = "write_journal";
+    private static final String KEY_QUEUE = "queue";
+    private static final long INITIAL_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 60000;
+    private static final long DRAIN_RATE_WINDOW_MS = 60000;
+    // Firestore retries unreachable servers itself, so failures that reach the journal are rare
+    private static final int MAX_ATTEMPTS = 10;
+
+    private static WriteJournal instance;
+
+    private final SharedPreferences prefs;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Unconfirmed writes in the order they were journaled
+    private final Deque<Entry> queue = new ArrayDeque<>();
+    // Commit times within the drain rate window
+    private final Deque<Long> drainTimes = new ArrayDeque<>();
+    private long coalescedCount;
+    private long committedCount;
+
+    private WriteJournal(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        restore();
+        ConnectivityManager connectivity = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivity != null) {
+            connectivity.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(@NonNull Network network) {
+                    mainHandler.post(WriteJournal.this::retryNow);
+                }
+            });
+        }
+        for (Entry entry : new ArrayList<>(queue)) {
+            send(entry);
+        }
+    }
+
+    /**
+     * Returns the journal, restoring and replaying any writes left from an earlier run.
+     * Must be called on the main thread.
+     */
+    public static synchronized WriteJournal getInstance() {
+        if (instance == null) {
+            instance = new WriteJournal(FirebaseApp.getInstance().getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Journals a write and hands it to Firestore, which applies it to the local cache at once.
+     *
+     * @param mutation The write.
+     * @return A future completed when the server confirms the write.
+     */
+    public CompletableFuture<Void> enqueue(PendingMutation mutation) {
+        Entry entry = new Entry(mutation);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        entry.futures.add(future);
+        queue.addLast(entry);
+        persist();
+        send(entry);
+        return future;
+    }
+
+    /**
+     * Returns the writes not yet confirmed, oldest first, including those restored from an
+     * earlier run.
+     */
+    public List<PendingMutation> getPendingMutations() {
+        List<PendingMutation> mutations = new ArrayList<>(queue.size());
+        for (Entry entry : queue) {
+            mutations.add(entry.mutation);
+        }
+        return mutations;
+    }
+
+    /**
+     * Returns the number of writes waiting to be confirmed.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Returns the number of writes confirmed per second over the last minute.
+     */
+    public double getDrainRate() {
+        pruneDrainTimes(SystemClock.elapsedRealtime());
+        return drainTimes.size() / (DRAIN_RATE_WINDOW_MS / 1000.0);
+    }
+
+    /**
+     * Returns how many restored writes were merged into an earlier write to the same document.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * Returns how many writes the server has confirmed since the process started.
+     */
+    public long getCommittedCount() {
+        return committedCount;
+    }
+
+    /**
+     * Sends the writes waiting for their backoff right away, e.g. because the network is back.
+     */
+    private void retryNow() {
+        for (Entry entry : new ArrayList<>(queue)) {
+            if (entry.retry != null) {
+                mainHandler.removeCallbacks(entry.retry);
+                entry.retry = null;
+                entry.backoff.reset();
+                send(entry);
+            }
+        }
+    }
+
+    private void send(Entry entry) {
+        CompletableFuture<Void> sent;
+        try {
+            sent = WriteScheduler.getInstance().submit(WriteScheduler.collectionOf(entry.mutation.getPath()), 1,
+                    () -> write(entry.mutation));
+        } catch (RuntimeException e) {
+            sent = TaskFutures.failed(e);
+        }
+        // Firestore keeps an unconfirmed write until the server answers, so there is no timeout
+        sent.whenCompleteAsync((aVoid, e) -> onSent(entry, e == null ? null : TaskFutures.unwrap(e)),
+                AppExecutors.mainThread());
+    }
+
+    private void onSent(Entry entry, Throwable e) {
+        if (e != null) {
+            entry.attempts++;
+        }
+        if (e != null && !isPermanent(e) && entry.attempts < MAX_ATTEMPTS) {
+            persist();
+            long delayMs = entry.backoff.nextDelayMs();
+            Log.d(TAG, "Write to " + entry.mutation.getPath() + " failed, retrying in " + delayMs + " ms", e);
+            entry.retry = () -> {
+                entry.retry = null;
+                send(entry);
+            };
+            mainHandler.postDelayed(entry.retry, delayMs);
+            return;
+        }
+        queue.remove(entry);
+        persist();
+        if (e != null) {
+            // Retrying cannot succeed, or has failed too often, so give up on the write
+            Log.d(TAG, "Dropping write to " + entry.mutation.getPath() + " after " + entry.attempts
+                    + " attempts", e);
+            for (CompletableFuture<Void> future : entry.futures) {
+                future.completeExceptionally(e);
+            }
+        } else {
+            committedCount++;
+            long now = SystemClock.elapsedRealtime();
+            drainTimes.addLast(now);
+            pruneDrainTimes(now);
+            for (CompletableFuture<Void> future : entry.futures) {
+                future.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Checks whether a failed write would fail again when sent again. Only the Firestore codes
+     * for contention, overload and unreachable servers are worth retrying; any other exception,
+     * such as one thrown while building the write, is permanent.
+     */
+    private static boolean isPermanent(Throwable e) {
+        if (!(e instanceof FirebaseFirestoreException)) {
+            return true;
+        }
+        switch (((FirebaseFirestoreException) e).getCode()) {
+            case ABORTED:
+            case CANCELLED:
+            case DEADLINE_EXCEEDED:
+            case INTERNAL:
+            case RESOURCE_EXHAUSTED:
+            case UNAVAILABLE:
+            case UNKNOWN:
+                return false;
+            default:
+                // NOT_FOUND, PERMISSION_DENIED, INVALID_ARGUMENT, FAILED_PRECONDITION,
+                // UNAUTHENTICATED, OUT_OF_RANGE, DATA_LOSS and the like
+                return true;
+        }
+    }
+
+    private void pruneDrainTimes(long now) {
+        while (!drainTimes.isEmpty() && now - drainTimes.peekFirst() > DRAIN_RATE_WINDOW_MS) {
+            drainTimes.removeFirst();
+        }
+    }
+
+    private static CompletableFuture<Void> send(PendingMutation mutation) {
+        return WriteScheduler.getInstance().submit(WriteScheduler.collectionOf(mutation.getPath()), 1,
+                () -> write(mutation));
+    }
+
+    private static CompletableFuture<Void> write(PendingMutation mutation) {
+        DocumentReference ref = FirebaseFirestore.getInstance().document(mutation.getPath());
+        switch (mutation.getType()) {
+            case SET:
+                return TaskFutures.toFuture(ref.set(mutation.getFields()));
+            case DELETE:
+                return TaskFutures.toFuture(ref.delete());
+            default:
+                Map<String, Object> changes = new HashMap<>(mutation.getFields());
+                for (Map.Entry<String, List<Object>> entry : mutation.getArrayUnions().entrySet()) {
+                    changes.put(entry.getKey(), FieldValue.arrayUnion(entry.getValue().toArray()));
+                }
+                for (Map.Entry<String, List<Object>> entry : mutation.getArrayRemoves().entrySet()) {
+                    changes.put(entry.getKey(), FieldValue.arrayRemove(entry.getValue().toArray()));
+                }
+                return TaskFutures.toFuture(ref.update(changes));
+        }
+    }
+
+    private void persist() {
+        JSONArray array = new JSONArray();
+        try {
+            for (Entry entry : queue) {
+                array.put(toJson(entry.mutation).put("attempts", entry.attempts));
+            }
+        } catch (JSONException e) {
+            Log.d(TAG, "Failed to persist the journal", e);
+            return;
+        }
+        prefs.edit().putString(KEY_QUEUE, array.toString()).apply();
+    }
+
+    private void restore() {
+        String stored = prefs.getString(KEY_QUEUE, null);
+        if (stored == null) {
+            return;
+        }
+        try {
+            JSONArray array = new JSONArray(stored);
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject json = array.getJSONObject(i);
+                PendingMutation mutation = fromJson(json);
+                // Nothing has been sent yet, so a write can be merged into an earlier one
+                Entry target = findLastEntry(mutation.getPath());
+                PendingMutation merged = target == null ? null : target.mutation.coalesce(mutation);
+                if (merged != null) {
+                    target.mutation = merged;
+                    coalescedCount++;
+                } else {
+                    Entry entry = new Entry(mutation);
+                    entry.attempts = json.optInt("attempts");
+                    queue.addLast(entry);
+                }
+            }
+        } catch (JSONException e) {
+            Log.d(TAG, "Discarding an unreadable journal", e);
+            queue.clear();
+            prefs.edit().remove(KEY_QUEUE).apply();
+        }
+    }
+
+    /**
+     * Returns the last journaled write of a document, or null if there is none.
+     */
+    private Entry findLastEntry(String path) {
+        Iterator<Entry> iterator = queue.descendingIterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.mutation.getPath().equals(path)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private static JSONObject toJson(PendingMutation mutation) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("path", mutation.getPath());
+        json.put("type", mutation.getType().name());
+        JSONObject fields = new JSONObject();
+        for (Map.Entry<String, Object> entry : mutation.getFields().entrySet()) {
+            fields.put(entry.getKey(), toJsonValue(entry.getValue()));
+        }
+        json.put("fields", fields);
+        json.put("arrayUnions", toJsonLists(mutation.getArrayUnions()));
+        json.put("arrayRemoves", toJsonLists(mutation.getArrayRemoves()));
+        return json;
+    }
+
+    private static PendingMutation fromJson(JSONObject json) throws JSONException {
+        Map<String, Object> fields = new LinkedHashMap<>();
+        JSONObject jsonFields = json.getJSONObject("fields");
+        Iterator<String> keys = jsonFields.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            fields.put(key, fromJsonValue(jsonFields.get(key)));
+        }
+        return new PendingMutation(json.getString("path"), PendingMutation.Type.valueOf(json.getString("type")),
+                fields, fromJsonLists(json.getJSONObject("arrayUnions")),
+                fromJsonLists(json.getJSONObject("arrayRemoves")));
+    }
+
+    private static Object toJsonValue(Object value) {
+        if (value == null) {
+            return JSONObject.NULL;
+        }
+        if (value instanceof List) {
+            JSONArray array = new JSONArray();
+            for (Object element : (List<?>) value) {
+                array.put(toJsonValue(element));
+            }
+            return array;
+        }
+        if (value instanceof Map) {
+            JSONObject object = new JSONObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                try {
+                    object.put(String.valueOf(entry.getKey()), toJsonValue(entry.getValue()));
+                } catch (JSONException e) {
+                    // Only thrown for non-finite numbers, which Firestore rejects as well
+                    throw new IllegalArgumentException(e);
+                }
+            }
+            return object;
+        }
+        return value;
+    }
+
+    private static Object fromJsonValue(Object value) throws JSONException {
+        if (value == JSONObject.NULL) {
+            return null;
+        }
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            List<Object> list = new ArrayList<>();
+            for (int i = 0; i < array.length(); i++) {
+                list.add(fromJsonValue(array.get(i)));
+            }
+            return list;
+        }
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            Map<String, Object> map = new LinkedHashMap<>();
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                map.put(key, fromJsonValue(object.get(key)));
+            }
+            return map;
+        }
+        if (value instanceof Number) {
+            // JSON drops the fraction of whole numbers; every journaled number is a double
+            return ((Number) value).doubleValue();
+        }
+        return value;
+    }
+
+    private static JSONObject toJsonLists(Map<String, List<Object>> lists) throws JSONException {
+        JSONObject json = new JSONObject();
+        for (Map.Entry<String, List<Object>> entry : lists.entrySet()) {
+            json.put(entry.getKey(), toJsonValue(entry.getValue()));
+        }
+        return json;
+    }
+
+    private static Map<String, List<Object>> fromJsonLists(JSONObject json) throws JSONException {
+        Map<String, List<Object>> lists = new LinkedHashMap<>();
+        Iterator<String> keys = json.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            lists.put(key, (List<Object>) fromJsonValue(json.getJSONArray(key)));
+        }
+        return lists;
+    }
+
+    /**
+     * A queued write and the futures of every write merged into it.
+     */
+    private static class Entry {
+        PendingMutation mutation;
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+        final Backoff backoff = new Backoff(INITIAL_BACKOFF_MS, MAX_BACKOFF_MS);
+        // Failed sends so far, kept across restarts
+        int attempts;
+        // Sends the write again once its backoff has passed; null unless waiting for it
+        Runnable retry;
+
+        Entry(PendingMutation mutation) {
+            this.mutation = mutation;
+        }
+    }
+}
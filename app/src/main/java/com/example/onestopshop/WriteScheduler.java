@@ -0,0 +1,264 @@
+package com.example.onestopshop;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.storage.StorageException;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Rate-limits writes so that bulk operations do not flood Firestore and Storage.
+ * Every write is submitted under a collection name with a cost (the number of documents
+ * it writes) and waits in that collection's queue until its token bucket allows it.
+ * Writes that fail because of contention or exhausted quota halve the collection's rate,
+ * and successes raise it again step by step. Requests in one queue are started in order.
+ */
+public class WriteScheduler {
+    private static final String TAG = "WriteScheduler";
+    /**
+     * Item documents.
+     */
+    public static final String ITEMS = "items";
+    /**
+     * Photo link documents.
+     */
+    public static final String PHOTOS = "photos";
+    /**
+     * Storage uploads and deletes.
+     */
+    public static final String STORAGE = "storage";
+
+    // Firestore sustains 500 writes per second to a new collection
+    private static final double DEFAULT_MAX_RATE = 500;
+    private static final double STORAGE_MAX_RATE = 10;
+    private static final double MIN_RATE = 1;
+    private static final long THROUGHPUT_WINDOW_MS = 60000;
+
+    private static WriteScheduler instance;
+
+    // Owns all state below; requests are queued and started on this thread
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final Map<String, Lane> lanes = new HashMap<>();
+    // Completion time and cost of writes within the throughput window
+    private final Deque<long[]> completions = new ArrayDeque<>();
+    private volatile int queueDepth;
+    private volatile long throttledCount;
+
+    private WriteScheduler() {
+    }
+
+    public static synchronized WriteScheduler getInstance() {
+        if (instance == null) {
+            instance = new WriteScheduler();
+        }
+        return instance;
+    }
+
+    /**
+     * Returns the scheduler lane for a document path: the ID of the collection the document is in.
+     *
+     * @param documentPath A path such as "users/u/items/i/photos/p".
+     * @return The collection name, e.g. "photos".
+     */
+    public static String collectionOf(String documentPath) {
+        String[] segments = documentPath.split("/");
+        return segments.length >= 2 ? segments[segments.length - 2] : ITEMS;
+    }
+
+    /**
+     * Queues a write.
+     *
+     * @param collection The collection the write goes to, e.g. {@link #ITEMS}.
+     * @param cost       The number of documents the write touches; a batch costs its size.
+     * @param write      Starts the write; called once the rate limit allows it.
+     * @param <T>        The result type.
+     * @return A future completed with the write's result. Cancelling it before the write starts
+     * removes it from the queue; afterwards the cancellation is passed on to the write.
+     */
+    public <T> CompletableFuture<T> submit(String collection, int cost, Supplier<CompletableFuture<T>> write) {
+        Request<T> request = new Request<>(cost, write);
+        executor.execute(() -> {
+            Lane lane = lanes.get(collection);
+            if (lane == null) {
+                double maxRate = STORAGE.equals(collection) ? STORAGE_MAX_RATE : DEFAULT_MAX_RATE;
+                lane = new Lane(collection, new TokenBucket(maxRate, MIN_RATE, SystemClock.elapsedRealtime()));
+                lanes.put(collection, lane);
+            }
+            lane.queue.addLast(request);
+            queueDepth++;
+            if (!lane.wakeUpScheduled) {
+                dispatch(lane);
+            }
+        });
+        return request.result;
+    }
+
+    /**
+     * Starts the queued requests the bucket allows and schedules a wake-up for the rest.
+     */
+    private void dispatch(Lane lane) {
+        lane.wakeUpScheduled = false;
+        while (!lane.queue.isEmpty()) {
+            Request<?> request = lane.queue.peekFirst();
+            if (request.result.isDone()) {
+                // Cancelled while waiting
+                lane.queue.removeFirst();
+                queueDepth--;
+                continue;
+            }
+            long now = SystemClock.elapsedRealtime();
+            if (!lane.bucket.tryAcquire(request.cost, now)) {
+                throttledCount++;
+                long delay = lane.bucket.delayUntilAvailable(request.cost, now);
+                lane.wakeUpScheduled = true;
+                executor.schedule(() -> dispatch(lane), Math.max(1, delay), TimeUnit.MILLISECONDS);
+                return;
+            }
+            lane.queue.removeFirst();
+            queueDepth--;
+            start(lane, request);
+        }
+    }
+
+    private <T> void start(Lane lane, Request<T> request) {
+        CompletableFuture<T> write;
+        try {
+            write = request.write.get();
+        } catch (RuntimeException e) {
+            request.result.completeExceptionally(e);
+            return;
+        }
+        request.result.whenComplete((result, e) -> {
+            if (request.result.isCancelled()) {
+                write.cancel(false);
+            }
+        });
+        write.whenComplete((result, e) -> {
+            Throwable cause = e == null ? null : TaskFutures.unwrap(e);
+            executor.execute(() -> onFinished(lane, request.cost, cause));
+            if (cause != null) {
+                request.result.completeExceptionally(cause);
+            } else {
+                request.result.complete(result);
+            }
+        });
+    }
+
+    private void onFinished(Lane lane, int cost, Throwable e) {
+        long now = SystemClock.elapsedRealtime();
+        if (e == null) {
+            lane.bucket.onSuccess();
+            completions.addLast(new long[]{now, cost});
+            pruneCompletions(now);
+        } else if (isContention(e)) {
+            lane.bucket.onContention();
+            Log.d(TAG, "Contention on " + lane.name + ", rate lowered to " + lane.bucket.getRate() + "/s");
+        }
+    }
+
+    private static boolean isContention(Throwable e) {
+        if (e instanceof FirebaseFirestoreException) {
+            switch (((FirebaseFirestoreException) e).getCode()) {
+                case ABORTED:
+                case RESOURCE_EXHAUSTED:
+                case UNAVAILABLE:
+                case DEADLINE_EXCEEDED:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+        if (e instanceof StorageException) {
+            int status = ((StorageException) e).getHttpResultCode();
+            return status == 429 || status == 503
+                    || ((StorageException) e).getErrorCode() == StorageException.ERROR_RETRY_LIMIT_EXCEEDED;
+        }
+        return false;
+    }
+
+    private void pruneCompletions(long now) {
+        while (!completions.isEmpty() && now - completions.peekFirst()[0] > THROUGHPUT_WINDOW_MS) {
+            completions.removeFirst();
+        }
+    }
+
+    /**
+     * Returns the number of writes waiting for their rate limit, across all collections.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Returns the number of times a write had to wait for tokens.
+     */
+    public long getThrottledCount() {
+        return throttledCount;
+    }
+
+    /**
+     * Returns the documents written per second over the last minute.
+     */
+    public CompletableFuture<Double> getThroughput() {
+        return CompletableFuture.supplyAsync(() -> {
+            pruneCompletions(SystemClock.elapsedRealtime());
+            long documents = 0;
+            for (long[] completion : completions) {
+                documents += completion[1];
+            }
+            return documents * 1000.0 / THROUGHPUT_WINDOW_MS;
+        }, executor);
+    }
+
+    /**
+     * Returns the current rate limit of a collection in documents per second.
+     *
+     * @param collection The collection name.
+     * @return A future completed with the rate, or with the maximum if nothing was written yet.
+     */
+    public CompletableFuture<Double> getRate(String collection) {
+        return CompletableFuture.supplyAsync(() -> {
+            Lane lane = lanes.get(collection);
+            if (lane != null) {
+                return lane.bucket.getRate();
+            }
+            return STORAGE.equals(collection) ? STORAGE_MAX_RATE : DEFAULT_MAX_RATE;
+        }, executor);
+    }
+
+    /**
+     * The queue and token bucket of one collection.
+     */
+    private static class Lane {
+        final String name;
+        final TokenBucket bucket;
+        final Deque<Request<?>> queue = new ArrayDeque<>();
+        boolean wakeUpScheduled;
+
+        Lane(String name, TokenBucket bucket) {
+            this.name = name;
+            this.bucket = bucket;
+        }
+    }
+
+    private static class Request<T> {
+        final int cost;
+        final Supplier<CompletableFuture<T>> write;
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        Request(int cost, Supplier<CompletableFuture<T>> write) {
+            this.cost = cost;
+            this.write = write;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+public class BackoffUnitTest {
+    @Test
+    public void testDelaysDoubleWithinJitterAndCap() {
+        Backoff backoff = new Backoff(1000, 8000, new Random(42));
+        long[] nominal = {1000, 2000, 4000, 8000, 8000};
+        for (long expected : nominal) {
+            long delay = backoff.nextDelayMs();
+            assertTrue(delay >= expected / 2 && delay <= expected);
+        }
+        assertEquals(5, backoff.getAttempt());
+        backoff.reset();
+        assertTrue(backoff.nextDelayMs() <= 1000);
+    }
+
+    @Test
+    public void testDelaysAreJittered() {
+        Backoff first = new Backoff(1000, 60000, new Random(1));
+        Backoff second = new Backoff(1000, 60000, new Random(2));
+        first.nextDelayMs();
+        second.nextDelayMs();
+        assertNotEquals(first.nextDelayMs(), second.nextDelayMs());
+    }
+}
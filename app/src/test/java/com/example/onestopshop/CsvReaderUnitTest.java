@@ -0,0 +1,36 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+public class CsvReaderUnitTest {
+    @Test
+    public void testReadsPlainRecords() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("a,b,c\r\n1,,3\n"));
+        assertEquals(Arrays.asList("a", "b", "c"), reader.readRecord());
+        assertEquals(Arrays.asList("1", "", "3"), reader.readRecord());
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void testReadsQuotedFields() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("\"a, b\",\"say \"\"hi\"\"\",\"two\nlines\"\nlast"));
+        assertEquals(Arrays.asList("a, b", "say \"hi\"", "two\nlines"), reader.readRecord());
+        assertEquals(Arrays.asList("last"), reader.readRecord());
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void testFormattedRecordReadsBack() throws IOException {
+        List<String> fields = Arrays.asList("plain", "with,comma", "with \"quote\"", "multi\r\nline", "");
+        CsvReader reader = new CsvReader(new StringReader(CsvReader.formatRecord(fields) + "\n"));
+        assertEquals(fields, reader.readRecord());
+    }
+}
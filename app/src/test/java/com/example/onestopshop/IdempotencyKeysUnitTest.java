@@ -0,0 +1,17 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class IdempotencyKeysUnitTest {
+    @Test
+    public void testKeysAreStableAndNamespaced() {
+        assertEquals(IdempotencyKeys.fromValue("barcode", "0123/45"), IdempotencyKeys.fromValue("barcode", "0123/45"));
+        assertNotEquals(IdempotencyKeys.fromValue("barcode", "1"), IdempotencyKeys.fromValue("photo", "1"));
+        // Usable as a document ID
+        assertTrue(IdempotencyKeys.fromValue("barcode", "0123/45").indexOf('/') < 0);
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class InventoryQueryUnitTest {
+    @Test
+    public void testFilterAndTotal() {
+        InventoryQuery query = new InventoryQuery()
+                .withFilters("2021-01-01", "2022-01-01", "apple", Arrays.asList("device"));
+        InventoryView view = query.prepare(testData());
+        // only the two apple devices bought in 2021 pass
+        assertEquals(2, view.getItems().size());
+        assertEquals(300.0, view.getTotalEstimatedValue(), 0.001);
+    }
+
+    @Test
+    public void testSortByValue() {
+        List<Item> items = testData();
+        InventoryView ascending = new InventoryQuery().withSort("Estimated", true).prepare(items);
+        assertEquals(50.0, ascending.getItems().get(0).getEstimatedValue(), 0.001);
+        InventoryView descending = new InventoryQuery().withSort("Estimated", false).prepare(items);
+        assertEquals(200.0, descending.getItems().get(0).getEstimatedValue(), 0.001);
+        // the input keeps its original order
+        assertEquals("Headphones", items.get(0).getItemName());
+    }
+
+    private List<Item> testData() {
+        List<Item> inventory = new ArrayList<>();
+        inventory.add(new Item("Headphones", "2021-04-01", "apple", 100.0,
+                new ArrayList<>(Arrays.asList("device"))));
+        inventory.add(new Item("Iphone X", "2021-06-01", "apple", 200.0,
+                new ArrayList<>(Arrays.asList("device", "phone"))));
+        inventory.add(new Item("Iphone 8", "2020-04-01", "apple", 150.0,
+                new ArrayList<>(Arrays.asList("device"))));
+        inventory.add(new Item("Walkman", "2021-04-01", "Sony", 50.0,
+                new ArrayList<>(Arrays.asList("device"))));
+        return inventory;
+    }
+}
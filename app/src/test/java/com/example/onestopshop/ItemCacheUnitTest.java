@@ -0,0 +1,88 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ItemCacheUnitTest {
+    @Test
+    public void testConcurrentFetchesAreCoalesced() {
+        ItemCache cache = new ItemCache();
+        AtomicInteger requests = new AtomicInteger();
+        CompletableFuture<Item> network = new CompletableFuture<>();
+        CompletableFuture<Item> first = cache.fetch("1", id -> {
+            requests.incrementAndGet();
+            return network;
+        });
+        CompletableFuture<Item> second = cache.fetch("1", id -> {
+            requests.incrementAndGet();
+            return network;
+        });
+        assertEquals(1, requests.get());
+
+        Item item = new Item("1", "Phone", "2023-03-01", "apple", "14", 200.0,
+                new ArrayList<>(Arrays.asList("device")));
+        network.complete(item);
+        assertSame(item, first.join());
+        assertSame(item, second.join());
+        assertSame(item, cache.get("1"));
+        assertEquals(0, cache.getInFlightCount());
+    }
+
+    @Test
+    public void testCancelledCallerDoesNotCancelOthers() {
+        ItemCache cache = new ItemCache();
+        CompletableFuture<Item> network = new CompletableFuture<>();
+        CompletableFuture<Item> first = cache.fetch("1", id -> network);
+        CompletableFuture<Item> second = cache.fetch("1", id -> network);
+        first.cancel(false);
+
+        Item item = new Item("1", "Phone", "2023-03-01", "apple", "14", 200.0, new ArrayList<>());
+        network.complete(item);
+        assertTrue(first.isCancelled());
+        assertSame(item, second.join());
+        assertSame(item, cache.get("1"));
+    }
+
+    @Test
+    public void testLoaderThatThrowsFailsTheFetch() {
+        ItemCache cache = new ItemCache();
+        CompletableFuture<Item> fetch = cache.fetch("1", id -> {
+            throw new IllegalStateException("offline");
+        });
+        assertTrue(fetch.isCompletedExceptionally());
+        assertEquals(0, cache.getInFlightCount());
+    }
+
+    @Test
+    public void testFetchDoesNotOverwriteNewerSnapshot() {
+        ItemCache cache = new ItemCache();
+        CompletableFuture<Item> network = new CompletableFuture<>();
+        CompletableFuture<Item> fetch = cache.fetch("1", id -> network);
+        Item fresh = new Item("1", "Phone", "2023-03-01", "apple", "15", 300.0, new ArrayList<>());
+        cache.replaceAll(Arrays.asList(fresh));
+
+        Item stale = new Item("1", "Phone", "2023-03-01", "apple", "14", 200.0, new ArrayList<>());
+        network.complete(stale);
+        assertSame(stale, fetch.join());
+        assertSame(fresh, cache.get("1"));
+    }
+
+    @Test
+    public void testSnapshotReplacesContents() {
+        ItemCache cache = new ItemCache();
+        cache.put(new Item("1", "Phone", "2023-03-01", "apple", "14", 200.0, new ArrayList<>()));
+        cache.replaceAll(Arrays.asList(
+                new Item("2", "Mac", "2023-03-01", "apple", "Air", 900.0, new ArrayList<>())));
+        assertNull(cache.get("1"));
+        assertEquals("Mac", cache.get("2").getItemName());
+    }
+}
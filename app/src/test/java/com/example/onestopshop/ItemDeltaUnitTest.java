@@ -0,0 +1,66 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ItemDeltaUnitTest {
+    private Item item(String comments, double value, List<String> tags) {
+        return new Item("1", "Phone", "A phone", "2023-03-01", "apple", "14", value, comments, "", tags);
+    }
+
+    @Test
+    public void testUnchangedItemIsEmpty() {
+        Item original = new Item("1", "Phone", "A phone", "2023-03-01", "apple", "14", 200.0, null, null,
+                new ArrayList<>(Arrays.asList("device")));
+        ItemDelta delta = ItemDelta.between(original, item("", 200.0, new ArrayList<>(Arrays.asList("device"))));
+        assertTrue(delta.isEmpty());
+    }
+
+    @Test
+    public void testOnlyChangedFieldsAreSent() {
+        ItemDelta delta = ItemDelta.between(item("old", 200.0, Arrays.asList("device")),
+                item("new", 250.0, Arrays.asList("device")));
+        assertFalse(delta.isEmpty());
+        assertEquals(2, delta.getChangedFields().size());
+        assertEquals("new", delta.getChangedFields().get("comments"));
+        assertEquals(250.0, delta.getChangedFields().get("estimatedValue"));
+        assertTrue(delta.getAddedTags().isEmpty());
+    }
+
+    @Test
+    public void testTagChanges() {
+        ItemDelta added = ItemDelta.between(item("", 1, Arrays.asList("a")), item("", 1, Arrays.asList("a", "b")));
+        assertEquals(Arrays.asList("b"), added.getAddedTags());
+        assertTrue(added.getChangedFields().isEmpty());
+
+        ItemDelta removed = ItemDelta.between(item("", 1, Arrays.asList("a", "b")), item("", 1, Arrays.asList("a")));
+        assertEquals(Arrays.asList("b"), removed.getRemovedTags());
+
+        // Adding and removing at once sends the whole list
+        ItemDelta both = ItemDelta.between(item("", 1, Arrays.asList("a")), item("", 1, Arrays.asList("b")));
+        assertEquals(Arrays.asList("b"), both.getChangedFields().get("tags"));
+        assertTrue(both.getAddedTags().isEmpty());
+        assertTrue(both.getRemovedTags().isEmpty());
+        assertEquals(Long.valueOf(1), both.getTagChanges().get("b"));
+        assertEquals(Long.valueOf(-1), both.getTagChanges().get("a"));
+        assertEquals(2, both.getTagChanges().size());
+    }
+
+    @Test
+    public void testApplyTo() {
+        Item original = item("old", 200.0, Arrays.asList("a", "b"));
+        Item edited = item("new", 200.0, Arrays.asList("a"));
+        Item applied = ItemDelta.between(original, edited).applyTo(original);
+        assertEquals("new", applied.getComments());
+        assertEquals(Arrays.asList("a"), applied.getTags());
+        assertEquals("1", applied.getItemId());
+        assertEquals("Phone", applied.getItemName());
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ItemRecordsUnitTest {
+    @Test
+    public void testRecordRoundTrip() {
+        Item item = new Item("Phone", "A phone", "2023-03-01", "apple", "14", 200.0, "mint", "SN1",
+                Arrays.asList("device", "work"));
+        Map<String, String> record = new HashMap<>();
+        for (int i = 0; i < ItemRecords.COLUMNS.size(); i++) {
+            record.put(ItemRecords.COLUMNS.get(i), ItemRecords.toRecord(item).get(i));
+        }
+        Item read = ItemRecords.fromRecord(record);
+        assertEquals("Phone", read.getItemName());
+        assertEquals("SN1", read.getSerialNumber());
+        assertEquals("mint", read.getComments());
+        assertEquals(200.0, read.getEstimatedValue(), 0);
+        assertEquals(Arrays.asList("device", "work"), read.getTags());
+        assertNull(ItemValidator.validate(read));
+    }
+
+    @Test
+    public void testMissingColumnsFailValidation() {
+        Map<String, String> record = new HashMap<>();
+        record.put("itemName", "Phone");
+        record.put("tags", " ; ");
+        assertEquals("Invalid Description", ItemValidator.validate(ItemRecords.fromRecord(record)));
+    }
+
+    @Test
+    public void testTagListIsNotSplit() {
+        Map<String, Object> record = new HashMap<>();
+        record.put("tags", Arrays.asList("a;b", " c ", ""));
+        assertEquals(Arrays.asList("a;b", "c"), ItemRecords.fromRecord(record).getTags());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidValueIsRejected() {
+        Map<String, String> record = new HashMap<>();
+        record.put("estimatedValue", "lots");
+        ItemRecords.fromRecord(record);
+    }
+}
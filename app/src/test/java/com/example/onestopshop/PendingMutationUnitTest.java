@@ -0,0 +1,76 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class PendingMutationUnitTest {
+    private static final String PATH = "users/u/items/1";
+
+    private Map<String, Object> fields(String key, Object value) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(key, value);
+        return fields;
+    }
+
+    @Test
+    public void testUpdatesMergeLaterFieldsWin() {
+        PendingMutation first = PendingMutation.update(PATH, fields("comments", "a"));
+        PendingMutation second = PendingMutation.update(PATH, fields("comments", "b"));
+        second = second.coalesce(PendingMutation.update(PATH, fields("make", "apple")));
+        PendingMutation merged = first.coalesce(second);
+        assertEquals(PendingMutation.Type.UPDATE, merged.getType());
+        assertEquals("b", merged.getFields().get("comments"));
+        assertEquals("apple", merged.getFields().get("make"));
+    }
+
+    @Test
+    public void testUpdateFoldsIntoSet() {
+        Map<String, Object> item = fields("tags", Arrays.asList("a"));
+        item.put("itemName", "Phone");
+        PendingMutation merged = PendingMutation.set(PATH, item)
+                .coalesce(PendingMutation.update(PATH, fields("itemName", "Laptop"))
+                        .withArrayUnion("tags", Collections.singletonList("b")));
+        assertEquals(PendingMutation.Type.SET, merged.getType());
+        assertEquals("Laptop", merged.getFields().get("itemName"));
+        assertEquals(Arrays.asList("a", "b"), merged.getFields().get("tags"));
+        assertEquals(0, merged.getArrayUnions().size());
+    }
+
+    @Test
+    public void testDeleteWins() {
+        PendingMutation delete = PendingMutation.delete(PATH);
+        PendingMutation merged = PendingMutation.update(PATH, fields("make", "x")).coalesce(delete);
+        assertSame(delete, merged);
+        assertSame(delete, delete.coalesce(PendingMutation.update(PATH, fields("make", "y"))));
+    }
+
+    @Test
+    public void testArrayOps() {
+        PendingMutation unions = PendingMutation.update(PATH, new HashMap<>())
+                .withArrayUnion("tags", Arrays.asList("a"))
+                .coalesce(PendingMutation.update(PATH, new HashMap<>()).withArrayUnion("tags", Arrays.asList("b")));
+        assertEquals(Arrays.asList("a", "b"), unions.getArrayUnions().get("tags"));
+
+        // A union followed by a remove of the same field has no single-write form
+        assertNull(unions.coalesce(PendingMutation.update(PATH, new HashMap<>())
+                .withArrayRemove("tags", Arrays.asList("a"))));
+
+        // Overwriting the field drops earlier ops
+        PendingMutation overwritten = unions.coalesce(PendingMutation.update(PATH, fields("tags", Arrays.asList("c"))));
+        assertEquals(0, overwritten.getArrayUnions().size());
+        assertEquals(Arrays.asList("c"), overwritten.getFields().get("tags"));
+    }
+
+    @Test
+    public void testDifferentDocumentsDoNotCoalesce() {
+        assertNull(PendingMutation.delete(PATH).coalesce(PendingMutation.delete("users/u/items/2")));
+    }
+}
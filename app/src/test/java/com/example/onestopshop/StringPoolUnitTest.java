@@ -0,0 +1,138 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+public class StringPoolUnitTest {
+    private static final String[] MAKES = {"Apple", "Samsung", "IKEA", "Bosch", "Sony"};
+    private static final String[] TAGS = {"electronics", "office", "kitchen", "garage", "gift", "fragile"};
+
+    @Test
+    public void testEqualValuesShareOneInstance() {
+        StringPool pool = new StringPool(10);
+        String first = pool.intern(new String("Apple"));
+        assertSame(first, pool.intern(new String("Apple")));
+        assertNull(pool.intern(null));
+        assertEquals(1, pool.size());
+
+        List<String> tags = pool.internAll(Arrays.asList(new String("office"), new String("office")));
+        assertSame(tags.get(0), tags.get(1));
+        assertTrue(pool.internAll(null).isEmpty());
+    }
+
+    @Test
+    public void testPoolStopsGrowingAtMaxSize() {
+        StringPool pool = new StringPool(2);
+        pool.intern("a");
+        pool.intern("b");
+        String c = new String("c");
+        assertSame(c, pool.intern(c));
+        assertEquals(2, pool.size());
+    }
+
+    @Test
+    public void testValuesNoLongerUsedMakeRoomForNewOnes() {
+        StringPool pool = new StringPool(2);
+        String a = pool.intern(new String("a"));
+        pool.intern("b");
+        String c = new String("c");
+        assertSame(c, pool.intern(c));
+
+        // The next snapshot still has "a" but no longer "b"
+        pool.startGeneration();
+        assertSame(a, pool.intern(new String("a")));
+        String pooledC = pool.intern(new String("c"));
+        assertSame(pooledC, pool.intern(new String("c")));
+        pool.startGeneration();
+        assertEquals(2, pool.size());
+        assertSame(pooledC, pool.intern(new String("c")));
+    }
+
+    /**
+     * Builds a snapshot's worth of field values the way Firestore delivers them, one fresh
+     * instance per item, and counts the string instances left after pooling.
+     */
+    @Test
+    public void testPoolingCollapsesSnapshotInstances() {
+        int items = 10000;
+        StringPool pool = new StringPool(4096);
+        Set<String> fresh = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<String> pooled = Collections.newSetFromMap(new IdentityHashMap<>());
+        long freshChars = 0;
+        long pooledChars = 0;
+        for (int i = 0; i < items; i++) {
+            List<String> values = new ArrayList<>();
+            values.add(new String(MAKES[i % MAKES.length]));
+            values.add(new String("Model " + (i % 50)));
+            values.add(new String(TAGS[i % TAGS.length]));
+            values.add(new String(TAGS[(i + 1) % TAGS.length]));
+            for (String value : values) {
+                if (fresh.add(value)) {
+                    freshChars += value.length();
+                }
+            }
+            for (String value : pool.internAll(values)) {
+                if (pooled.add(value)) {
+                    pooledChars += value.length();
+                }
+            }
+        }
+        assertEquals(items * 4, fresh.size());
+        // 5 makes, 50 models and 6 tags
+        assertEquals(61, pooled.size());
+        assertTrue(pooledChars * 100 < freshChars);
+    }
+
+    /**
+     * Builds a snapshot of items the way {@link InventoryRepository#toItem} does, from fresh
+     * field instances as Firestore delivers them, and compares the heap the items retain with
+     * and without the pool. Document parsing needs Firestore, so the items are built from the
+     * parsed values directly.
+     */
+    @Test
+    public void testPoolingReducesRetainedHeap() {
+        int items = 50000;
+        long withoutPool = retainedBytes(items, null);
+        long withPool = retainedBytes(items, new StringPool(4096));
+        assertTrue(withPool < withoutPool * 3 / 4);
+    }
+
+    private static long retainedBytes(int count, StringPool pool) {
+        long before = usedHeap();
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String make = new String(MAKES[i % MAKES.length]);
+            String model = new String("Model " + (i % 50));
+            List<String> tags = new ArrayList<>(Arrays.asList(
+                    new String(TAGS[i % TAGS.length]), new String(TAGS[(i + 1) % TAGS.length])));
+            if (pool != null) {
+                make = pool.intern(make);
+                model = pool.intern(model);
+                tags = pool.internAll(tags);
+            }
+            items.add(new Item(String.valueOf(i), "name", "", "2023-01-01", make, model, 10, "", "", tags));
+        }
+        long retained = usedHeap() - before;
+        assertEquals(count, items.size());
+        return retained;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
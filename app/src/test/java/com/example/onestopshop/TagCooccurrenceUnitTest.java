@@ -0,0 +1,81 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TagCooccurrenceUnitTest {
+    private static Item item(String itemId, String make, String model, String... tags) {
+        return new Item(itemId, "name", "", "2023-01-01", make, model, 10, "", "",
+                new ArrayList<>(Arrays.asList(tags)));
+    }
+
+    @Test
+    public void testRelatedTagsRankedByCooccurrence() {
+        TagCooccurrence cooccurrence = new TagCooccurrence();
+        cooccurrence.sync(Arrays.asList(
+                item("1", "", "", "electronics", "office", "laptop"),
+                item("2", "", "", "electronics", "office"),
+                item("3", "", "", "electronics", "kitchen"),
+                item("4", "", "", "garden")));
+        assertEquals(Arrays.asList("office", "kitchen", "laptop"),
+                cooccurrence.related(Collections.singletonList("Electronics "), null, null, 3));
+        assertEquals(Arrays.asList("office"),
+                cooccurrence.related(Collections.singletonList("electronics"), null, null, 1));
+        assertTrue(cooccurrence.related(Collections.singletonList("garden"), null, null, 3).isEmpty());
+    }
+
+    @Test
+    public void testMakeAndModelSuggestTags() {
+        TagCooccurrence cooccurrence = new TagCooccurrence();
+        cooccurrence.put(item("1", "Apple", "MacBook Pro", "laptop", "office"));
+        cooccurrence.put(item("2", "apple", "iPhone", "phone"));
+        assertEquals(Arrays.asList("laptop", "office", "phone"),
+                cooccurrence.related(Collections.<String>emptyList(), " APPLE", "macbook  pro", 5));
+
+        // An item without tags still counts its make and model
+        cooccurrence.put(new Item("3", "name", "", "2023-01-01", "Apple", "iPad", 10, "", "", null));
+        assertEquals(3, cooccurrence.size());
+        // Picked tags are left out
+        assertEquals(Arrays.asList("laptop", "phone"),
+                cooccurrence.related(Collections.singletonList("office"), "Apple", null, 5));
+    }
+
+    @Test
+    public void testItemChangesUpdateCountsIncrementally() {
+        TagCooccurrence cooccurrence = new TagCooccurrence();
+        cooccurrence.put(item("1", "", "", "tools", "garage"));
+        assertEquals(Arrays.asList("garage"), cooccurrence.related(Collections.singletonList("tools"), null, null, 5));
+
+        cooccurrence.put(item("1", "", "", "tools", "shed"));
+        assertEquals(Arrays.asList("shed"), cooccurrence.related(Collections.singletonList("tools"), null, null, 5));
+        assertTrue(cooccurrence.related(Collections.singletonList("garage"), null, null, 5).isEmpty());
+
+        List<Item> remaining = Collections.singletonList(item("2", "", "", "books"));
+        cooccurrence.sync(remaining);
+        assertEquals(1, cooccurrence.size());
+        assertTrue(cooccurrence.related(Collections.singletonList("tools"), null, null, 5).isEmpty());
+    }
+
+    @Test
+    public void testUnchangedItemsAreSkippedAndCopiesAreIndependent() {
+        TagCooccurrence cooccurrence = new TagCooccurrence();
+        assertTrue(cooccurrence.sync(Arrays.asList(item("1", "", "", "tools", "garage"))));
+        assertFalse(cooccurrence.sync(Arrays.asList(item("1", "", "", "tools", "garage"))));
+        // A new spelling is taken without recounting
+        assertTrue(cooccurrence.put(item("1", "", "", "tools", "Garage")));
+        assertEquals(Arrays.asList("Garage"), cooccurrence.related(Collections.singletonList("tools"), null, null, 5));
+
+        TagCooccurrence copy = cooccurrence.copy();
+        cooccurrence.put(item("1", "", "", "tools", "shed"));
+        assertEquals(Arrays.asList("Garage"), copy.related(Collections.singletonList("tools"), null, null, 5));
+        assertEquals(Arrays.asList("shed"), cooccurrence.related(Collections.singletonList("tools"), null, null, 5));
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class TagEditUnitTest {
+    @Test
+    public void testAddAndRemoveKeepOrder() {
+        TagEdit edit = new TagEdit(Arrays.asList("new", "kitchen"), Arrays.asList("old"));
+        assertEquals(Arrays.asList("kitchen", "new"),
+                edit.apply(new ArrayList<>(Arrays.asList("old", "kitchen"))));
+    }
+
+    @Test
+    public void testTagInBothListsIsKept() {
+        TagEdit edit = new TagEdit(Arrays.asList("a"), Arrays.asList("a"));
+        assertEquals(Arrays.asList("a"), edit.apply(new ArrayList<>()));
+    }
+
+    @Test
+    public void testApplyToCopiesItem() {
+        Item item = new Item("1", "Phone", "2023-03-01", "apple", "14", 200.0,
+                new ArrayList<>(Arrays.asList("device")));
+        Item edited = new TagEdit(Collections.singletonList("work"), Collections.emptyList()).applyTo(item);
+        assertEquals(Arrays.asList("device", "work"), edited.getTags());
+        assertEquals(Arrays.asList("device"), item.getTags());
+        assertEquals("1", edited.getItemId());
+        assertTrue(new TagEdit(Collections.emptyList(), Collections.emptyList()).isEmpty());
+    }
+}
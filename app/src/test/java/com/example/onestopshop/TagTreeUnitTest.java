@@ -0,0 +1,100 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TagTreeUnitTest {
+    private static Item item(double value, String... tags) {
+        return new Item("name", "2021-01-01", "make", value, new ArrayList<>(Arrays.asList(tags)));
+    }
+
+    private static List<Item> inventory() {
+        return Arrays.asList(
+                item(1000, "office/it/laptops"),
+                item(200, "office/it/monitors", "office/furniture"),
+                item(300, "office/furniture"),
+                item(50, "kitchen"));
+    }
+
+    @Test
+    public void testSubtreeMembershipIsRangeCheck() {
+        TagTree tree = new TagTree(inventory());
+        assertTrue(tree.isInSubtree("office/it/laptops", "office"));
+        assertTrue(tree.isInSubtree("office/it/laptops", "office/it"));
+        assertTrue(tree.isInSubtree("office/it", "office/it"));
+        assertFalse(tree.isInSubtree("office/furniture", "office/it"));
+        assertFalse(tree.isInSubtree("office", "office/it"));
+        assertFalse(tree.isInSubtree("kitchen", "office"));
+        assertEquals(-1, tree.idOf("garden"));
+        // Segments are trimmed and empty ones dropped
+        assertTrue(tree.isInSubtree(" office / it /laptops", "office/"));
+    }
+
+    @Test
+    public void testAggregatesCountEachItemOncePerNode() {
+        TagTree tree = new TagTree(inventory());
+        assertEquals(3, tree.getItemCount("office"));
+        assertEquals(1500.0, tree.getTotalValue("office"), 0.001);
+        assertEquals(2, tree.getItemCount("office/it"));
+        assertEquals(1200.0, tree.getTotalValue("office/it"), 0.001);
+        assertEquals(2, tree.getItemCount("office/furniture"));
+        assertEquals(0, tree.getItemCount("garden"));
+
+        TagTree.Subtrees office = tree.subtrees(Arrays.asList("office", "office/it"));
+        assertEquals(3, office.getItemCount());
+        assertEquals(1500.0, office.getTotalValue(), 0.001);
+        // An item can be in several disjoint subtrees, so their counts do not add up
+        assertEquals(-1, tree.subtrees(Arrays.asList("office/it", "office/furniture")).getItemCount());
+    }
+
+    @Test
+    public void testSubtreesMergeNestedRanges() {
+        TagTree tree = new TagTree(inventory());
+        TagTree.Subtrees subtrees = tree.subtrees(Arrays.asList("office/it", "office/it/laptops", "kitchen", "garden"));
+        assertTrue(subtrees.contains("office/it/monitors"));
+        assertTrue(subtrees.contains("kitchen"));
+        assertFalse(subtrees.contains("office/furniture"));
+        assertFalse(subtrees.contains("office"));
+        assertFalse(subtrees.containsAny(null));
+        assertFalse(tree.subtrees(Collections.<String>emptyList()).contains("kitchen"));
+    }
+
+    @Test
+    public void testItemsAreMatchedByTagNumbers() {
+        List<Item> items = inventory();
+        TagTree tree = new TagTree(items);
+        TagTree.Subtrees subtrees = tree.subtrees(Collections.singletonList("office/it"));
+        assertTrue(subtrees.containsItem(items.get(0)));
+        assertTrue(subtrees.containsItem(items.get(1)));
+        assertFalse(subtrees.containsItem(items.get(2)));
+        // An item the tree was not built from is matched by its tags
+        assertTrue(subtrees.containsItem(item(10, "office/it/printers", "office/it")));
+        assertFalse(subtrees.containsItem(item(10, "garden")));
+    }
+
+    @Test
+    public void testQueryFiltersBySubtree() {
+        InventoryView view = new InventoryQuery()
+                .withFilters("", "", "", Collections.singletonList("office/it")).prepare(inventory());
+        assertEquals(2, view.getItems().size());
+        assertEquals(1200.0, view.getTotalEstimatedValue(), 0.001);
+        // The tree of the snapshot can be built once and shared by queries
+        List<Item> items = inventory();
+        TagTree tree = new TagTree(items);
+        InventoryView it = new InventoryQuery()
+                .withFilters("", "", "", Arrays.asList("office/it", "kitchen")).prepare(items, tree);
+        assertEquals(3, it.getItems().size());
+        assertEquals(1250.0, it.getTotalEstimatedValue(), 0.001);
+        // Flat tags still match exactly
+        assertEquals(1, new InventoryQuery().withFilters("", "", "", Collections.singletonList("kitchen"))
+                .prepare(inventory()).getItems().size());
+    }
+}
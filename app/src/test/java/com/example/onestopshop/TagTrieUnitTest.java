@@ -0,0 +1,52 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class TagTrieUnitTest {
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    @Test
+    public void testSuggestionsRankedByFrequency() {
+        TagTrie trie = new TagTrie(2);
+        trie.putAll(Arrays.asList(new TagUsage("Electronics", 10, 0), new TagUsage("electric", 3, 0),
+                new TagUsage("Office", 7, 0), new TagUsage("elephant", 5, 0)), NOW);
+        assertEquals(Arrays.asList("Electronics", "elephant"), trie.suggest("el"));
+        assertEquals(Arrays.asList("Electronics", "electric"), trie.suggest("ELEC"));
+        assertEquals(Arrays.asList("Electronics", "Office"), trie.suggest(""));
+        assertTrue(trie.suggest("x").isEmpty());
+    }
+
+    @Test
+    public void testRecentTagsRankHigher() {
+        TagTrie trie = new TagTrie(3);
+        trie.putAll(Arrays.asList(new TagUsage("kitchen", 10, NOW - 365 * DAY),
+                new TagUsage("keys", 6, NOW - DAY)), NOW);
+        assertEquals("keys", trie.suggest("k").get(0));
+    }
+
+    @Test
+    public void testPutUpdatesRankAlongPath() {
+        TagTrie trie = new TagTrie(1);
+        trie.putAll(Arrays.asList(new TagUsage("desk", 5, 0), new TagUsage("decor", 2, 0)), NOW);
+        assertEquals(Arrays.asList("desk"), trie.suggest("de"));
+        trie.put("decor", 9, 0, NOW);
+        assertEquals(Arrays.asList("decor"), trie.suggest("de"));
+        trie.put("decor", 1, 0, NOW);
+        assertEquals(Arrays.asList("desk"), trie.suggest("d"));
+    }
+
+    @Test
+    public void testFindExistingIgnoresCaseAndSpacing() {
+        TagTrie trie = new TagTrie(5);
+        trie.putAll(Arrays.asList(new TagUsage("Living Room", 1, 0)), NOW);
+        assertEquals("Living Room", trie.findExisting("  living   room "));
+        assertNull(trie.findExisting("living"));
+    }
+}
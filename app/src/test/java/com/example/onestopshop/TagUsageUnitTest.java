@@ -0,0 +1,34 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class TagUsageUnitTest {
+    @Test
+    public void testChangesAccumulateAcrossItems() {
+        Map<String, Long> deltas = new HashMap<>();
+        TagUsage.addChanges(deltas, Collections.emptyList(), Arrays.asList("office", "laptop"));
+        TagUsage.addChanges(deltas, Arrays.asList("laptop"), Arrays.asList("laptop", "office", "office"));
+        TagUsage.addChanges(deltas, Arrays.asList("laptop"), Collections.emptyList());
+        assertEquals(Long.valueOf(2), deltas.get("office"));
+        // Added once and removed once cancels out
+        assertFalse(deltas.containsKey("laptop"));
+    }
+
+    @Test
+    public void testFieldKeysEscapeReservedCharacters() {
+        String tag = "office/it.laptops 100%";
+        String key = TagUsage.toFieldKey(tag);
+        assertTrue(key.indexOf('.') < 0 && key.indexOf('/') < 0);
+        assertEquals(tag, TagUsage.fromFieldKey(key));
+        assertEquals("Electronics", TagUsage.toFieldKey("Electronics"));
+    }
+}
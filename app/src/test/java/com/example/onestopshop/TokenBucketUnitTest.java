@@ -0,0 +1,43 @@
+package com.example.onestopshop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TokenBucketUnitTest {
+    @Test
+    public void testBurstThenRefill() {
+        TokenBucket bucket = new TokenBucket(10, 1, 0);
+        assertTrue(bucket.tryAcquire(10, 0));
+        assertFalse(bucket.tryAcquire(1, 0));
+        assertEquals(100, bucket.delayUntilAvailable(1, 0));
+        assertTrue(bucket.tryAcquire(1, 100));
+    }
+
+    @Test
+    public void testLargeCostIsCappedAtBucketSize() {
+        TokenBucket bucket = new TokenBucket(10, 1, 0);
+        assertTrue(bucket.tryAcquire(500, 0));
+        assertFalse(bucket.tryAcquire(500, 500));
+        assertTrue(bucket.tryAcquire(500, 1000));
+    }
+
+    @Test
+    public void testContentionHalvesAndSuccessRestoresRate() {
+        TokenBucket bucket = new TokenBucket(100, 1, 0);
+        bucket.onContention();
+        assertEquals(50.0, bucket.getRate(), 0.001);
+        // The burst allowance is cut to the new rate
+        assertFalse(bucket.tryAcquire(51, 0));
+        for (int i = 0; i < 10; i++) {
+            bucket.onSuccess();
+        }
+        assertEquals(100.0, bucket.getRate(), 0.001);
+        for (int i = 0; i < 20; i++) {
+            bucket.onContention();
+        }
+        assertEquals(1.0, bucket.getRate(), 0.001);
+    }
+}